@@ -0,0 +1,121 @@
+package org.softstar.stp.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.softstar.stp.network.connection.Connection;
+import org.softstar.stp.network.connection.ConnectionOptions;
+import org.softstar.stp.network.decoder.CRC32PacketDecoder;
+import org.softstar.stp.network.encoder.CRC32PacketEncoder;
+import org.softstar.stp.network.packet.Features;
+import org.softstar.stp.network.packet.Packet;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Many small messages sent back to back, where bundling and the compact header matter most. Besides the
+// time per batch the datagrams and bytes both sides put on the wire are reported per batch.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChattyMessagesBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    // Which of the wire format features the client offers.
+    @Param({"all", "noBundle", "noCompact", "none"})
+    public String features;
+
+    @Param({"64"})
+    public int size;
+
+    private ConnectionPair pair;
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int disabled = switch (features) {
+            case "all" -> 0;
+            case "noBundle" -> Features.BUNDLE;
+            case "noCompact" -> Features.COMPACT;
+            case "none" -> Features.BUNDLE | Features.COMPACT;
+            default -> throw new IllegalArgumentException("Unknown features: " + features);
+        };
+        var options = new ConnectionOptions();
+        pair = ConnectionPair.open((channel, peer, server) -> new CountingConnection(channel, peer, server, options, server ? 0 : disabled));
+        pair.awaitEstablished();
+        message = Payloads.random(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pair.close();
+    }
+
+    @Benchmark
+    public void batch(WireCounters counters) throws IOException {
+        var client = (CountingConnection) pair.client;
+        var server = (CountingConnection) pair.server;
+        long datagrams = client.datagrams.get() + server.datagrams.get();
+        long bytes = client.bytes.get() + server.bytes.get();
+        for (int i = 0; i < BATCH_SIZE; ++i) client.sendMessage(message);
+        for (int i = 0; i < BATCH_SIZE; ++i) server.receiveMessage();
+        // Acks for the tail of the batch may still be on their way, they are counted with the next one.
+        counters.datagrams += client.datagrams.get() + server.datagrams.get() - datagrams;
+        counters.bytes += client.bytes.get() + server.bytes.get() - bytes;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class WireCounters {
+        public long datagrams;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            datagrams = 0;
+            bytes = 0;
+        }
+    }
+
+    private static final class CountingConnection extends Connection {
+        final AtomicLong datagrams = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        private final int disabledFeatures;
+
+        CountingConnection(@NotNull DatagramChannel channel, @NotNull SocketAddress peerAddress, boolean isServer, @NotNull ConnectionOptions options, int disabledFeatures) throws IOException {
+            super(channel, peerAddress, isServer ? ConnectionState.WAIT_SYN : ConnectionState.TO_SEND_SYN,
+                    new CRC32PacketEncoder(), new CRC32PacketDecoder(), options, false);
+            // Started only once the mask is set, the handshake asks for the local features.
+            this.disabledFeatures = disabledFeatures;
+            channel.configureBlocking(false);
+            start();
+        }
+
+        @Override
+        protected int getLocalFeatures() {
+            return super.getLocalFeatures() & ~disabledFeatures;
+        }
+
+        @Override
+        protected boolean sendNow(@NotNull Packet packet) {
+            if (!super.sendNow(packet)) return false;
+            datagrams.incrementAndGet();
+            bytes.addAndGet(packetEncoder.getEncodedLength(packet));
+            return true;
+        }
+
+        @Override
+        protected boolean sendNow(@NotNull List<Packet> packets) {
+            if (!super.sendNow(packets)) return false;
+            datagrams.incrementAndGet();
+            bytes.addAndGet(packetEncoder.getEncodedLength(packets));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.softstar.stp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.softstar.stp.utils.CircularArray;
+
+import java.util.concurrent.TimeUnit;
+
+// The operations the send and receive windows perform per packet. Capacities are powers of two.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircularArrayBenchmark {
+    @Param({"256", "1024"})
+    public int capacity;
+
+    private final Object element = new Object();
+    private CircularArray<Object> window;
+    private int index = 0;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        window = new CircularArray<>(capacity, capacity);
+    }
+
+    // A full window sliding by one, as when the receiver delivers a packet.
+    @Benchmark
+    public Object addRemoveFirst() {
+        var first = window.removeFirst();
+        window.add(element);
+        return first;
+    }
+
+    @Benchmark
+    public Object set() {
+        index = (index + 1) & (capacity - 1);
+        return window.set(index, element);
+    }
+
+    @Benchmark
+    public Object get() {
+        index = (index + 1) & (capacity - 1);
+        return window.get(index);
+    }
+}
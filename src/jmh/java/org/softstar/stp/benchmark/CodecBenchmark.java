@@ -0,0 +1,107 @@
+package org.softstar.stp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.softstar.stp.network.decoder.AbstractPacketDecoder;
+import org.softstar.stp.network.decoder.BasicPacketDecoder;
+import org.softstar.stp.network.decoder.CRC32CPacketDecoder;
+import org.softstar.stp.network.decoder.CRC32PacketDecoder;
+import org.softstar.stp.network.encoder.AbstractPacketEncoder;
+import org.softstar.stp.network.encoder.BasicPacketEncoder;
+import org.softstar.stp.network.encoder.CRC32CPacketEncoder;
+import org.softstar.stp.network.encoder.CRC32PacketEncoder;
+import org.softstar.stp.network.packet.AckPacket;
+import org.softstar.stp.network.packet.DataPacket;
+import org.softstar.stp.network.packet.Features;
+import org.softstar.stp.network.packet.Packet;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Encoding and decoding of single packets, with and without checksum and in both header layouts.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    private static final long SEQ_NUMBER = 0x1234_5678_9ABCL;
+    private static final long ACK_NUMBER = 0x0FED_CBA9_8765L;
+
+    @Param({"basic", "crc32", "crc32c"})
+    public String codec;
+
+    @Param({"false", "true"})
+    public boolean compact;
+
+    // Up to a full data packet.
+    @Param({"64", "1200", "4096", "16384"})
+    public int payloadSize;
+
+    private AbstractPacketEncoder encoder;
+    private AbstractPacketDecoder decoder;
+    private DataPacket data;
+    private AckPacket ack;
+    private ByteBuffer out;
+    private ByteBuffer encodedData;
+    private ByteBuffer encodedAck;
+
+    @Setup
+    public void setup() {
+        int features = compact ? Features.COMPACT : 0;
+        switch (codec) {
+            case "basic" -> {
+                encoder = new BasicPacketEncoder();
+                decoder = new BasicPacketDecoder();
+            }
+            case "crc32" -> {
+                encoder = new CRC32PacketEncoder();
+                decoder = new CRC32PacketDecoder();
+            }
+            case "crc32c" -> {
+                encoder = new CRC32CPacketEncoder();
+                decoder = new CRC32CPacketDecoder();
+                features |= Features.CRC32C;
+            }
+            default -> throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+        encoder = encoder.negotiate(features);
+        decoder = decoder.negotiate(features);
+
+        data = DataPacket.wrap(SEQ_NUMBER, Payloads.random(payloadSize));
+        ack = new AckPacket(SEQ_NUMBER, ACK_NUMBER, 512);
+        out = ByteBuffer.allocateDirect(1 << 16);
+        encodedData = encodeDirect(data);
+        encodedAck = encodeDirect(ack);
+    }
+
+    // Received datagrams sit in direct buffers, so the decode benchmarks read from one as well.
+    private ByteBuffer encodeDirect(Packet packet) {
+        var encoded = encoder.toByteBuffer(packet);
+        return ByteBuffer.allocateDirect(encoded.remaining()).put(encoded).flip();
+    }
+
+    @Benchmark
+    public ByteBuffer encodeData() {
+        out.clear();
+        encoder.encode(data, out);
+        return out;
+    }
+
+    @Benchmark
+    public Packet decodeData() {
+        return decoder.fromByteBuffer(encodedData.duplicate(), SEQ_NUMBER, ACK_NUMBER);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeAck() {
+        out.clear();
+        encoder.encode(ack, out);
+        return out;
+    }
+
+    @Benchmark
+    public Packet decodeAck() {
+        return decoder.fromByteBuffer(encodedAck.duplicate(), SEQ_NUMBER, ACK_NUMBER);
+    }
+}
@@ -0,0 +1,63 @@
+package org.softstar.stp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.softstar.stp.network.decoder.AbstractPacketDecoder;
+import org.softstar.stp.network.decoder.CRC32CPacketDecoder;
+import org.softstar.stp.network.encoder.AbstractPacketEncoder;
+import org.softstar.stp.network.encoder.CRC32CPacketEncoder;
+import org.softstar.stp.network.packet.DataPacket;
+import org.softstar.stp.network.packet.Features;
+import org.softstar.stp.network.packet.Packet;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// The cost of deflating data packets, and of trying to on payloads that do not compress. Level 0 is the
+// uncompressed baseline.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+    private static final long SEQ_NUMBER = 1;
+
+    @Param({"0", "1", "6"})
+    public int level;
+
+    @Param({"random", "text"})
+    public String payload;
+
+    @Param({"1200"})
+    public int payloadSize;
+
+    private AbstractPacketEncoder encoder;
+    private AbstractPacketDecoder decoder;
+    private DataPacket data;
+    private ByteBuffer out;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setup() {
+        int features = Features.CRC32C | Features.COMPRESSION;
+        encoder = new CRC32CPacketEncoder(level).negotiate(features);
+        decoder = new CRC32CPacketDecoder().negotiate(features);
+        data = DataPacket.wrap(SEQ_NUMBER, Payloads.of(payload, payloadSize));
+        out = ByteBuffer.allocateDirect(1 << 16);
+        var heap = encoder.toByteBuffer(data);
+        encoded = ByteBuffer.allocateDirect(heap.remaining()).put(heap).flip();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        out.clear();
+        encoder.encode(data, out);
+        return out;
+    }
+
+    @Benchmark
+    public Packet decode() {
+        return decoder.fromByteBuffer(encoded.duplicate(), SEQ_NUMBER, SEQ_NUMBER);
+    }
+}
@@ -0,0 +1,137 @@
+package org.softstar.stp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.softstar.stp.network.connection.Connection;
+import org.softstar.stp.network.connection.ConnectionEngine;
+import org.softstar.stp.network.connection.ConnectionOptions;
+import org.softstar.stp.network.connection.ListeningConnection;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// What many established but idle connections cost to keep around, both ends included: heap, direct buffers
+// and platform threads per connection, measured once they all exchanged a first write. Heap is taken after
+// System.gc, so the time includes a collection. The stacks of parked virtual threads live on the heap,
+// those of platform threads do not, which is why the platform engine is left out. The count needs a file
+// descriptor limit above it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ConnectionFootprintBenchmark {
+    private static final int WRITE_SIZE = 64;
+
+    @Param({"virtual", "loop"})
+    public String engine;
+
+    @Param({"20000"})
+    public int connections;
+
+    private ConnectionEngine connectionEngine;
+    private ConnectionOptions options;
+    private ListeningConnection listener;
+    private SocketAddress listenerAddress;
+    private final List<Connection> clients = new ArrayList<>();
+    private final List<Connection> accepted = new ArrayList<>();
+    private ExecutorService acceptor;
+    private byte[] payload;
+    private byte[] readBuffer;
+    private long heap;
+    private long directMemory;
+    private int threads;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        connectionEngine = Engines.create(engine);
+        options = new ConnectionOptions().setEngine(connectionEngine);
+        payload = Payloads.random(WRITE_SIZE);
+        readBuffer = new byte[WRITE_SIZE];
+        acceptor = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        acceptor.shutdownNow();
+        Engines.close(connectionEngine);
+    }
+
+    @Setup(Level.Invocation)
+    public void setup() throws IOException {
+        var channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        listenerAddress = channel.getLocalAddress();
+        listener = ListeningConnection.open(channel, options);
+        heap = ProcessStats.usedHeap();
+        directMemory = ProcessStats.usedDirectMemory();
+        threads = ProcessStats.platformThreads();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        for (var connection : clients) connection.close();
+        for (var connection : accepted) connection.close();
+        clients.clear();
+        accepted.clear();
+        listener.close();
+    }
+
+    @Benchmark
+    public void establish(FootprintCounters counters) throws IOException, InterruptedException, ExecutionException {
+        var acceptedAll = acceptor.submit(() -> {
+            for (int i = 0; i < connections; ++i) accepted.add(listener.accept());
+            return null;
+        });
+        for (int i = 0; i < connections; ++i) {
+            var channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+            var client = new Connection(channel, listenerAddress, false, options);
+            clients.add(client);
+            client.write(payload);
+            client.flush();
+        }
+        acceptedAll.get();
+        for (var connection : accepted) ConnectionPair.readFully(connection, readBuffer, WRITE_SIZE);
+
+        counters.heap += ProcessStats.usedHeap() - heap;
+        counters.directMemory += ProcessStats.usedDirectMemory() - directMemory;
+        counters.threads += ProcessStats.platformThreads() - threads;
+        counters.connections += connections;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class FootprintCounters {
+        private long heap;
+        private long directMemory;
+        private long threads;
+        private long connections;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            heap = 0;
+            directMemory = 0;
+            threads = 0;
+            connections = 0;
+        }
+
+        public double heapBytesPerConnection() {
+            return connections == 0 ? 0 : (double) heap / connections;
+        }
+
+        public double directBytesPerConnection() {
+            return connections == 0 ? 0 : (double) directMemory / connections;
+        }
+
+        public double platformThreadsPerConnection() {
+            return connections == 0 ? 0 : (double) threads / connections;
+        }
+    }
+}
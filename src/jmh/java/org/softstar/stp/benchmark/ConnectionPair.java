@@ -0,0 +1,96 @@
+package org.softstar.stp.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.softstar.stp.network.connection.Connection;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+
+// A client and a server connection on 127.0.0.1, talking directly or through a relay.
+final class ConnectionPair implements AutoCloseable {
+    private static final long ESTABLISH_TIMEOUT = 10_000_000_000L;
+
+    final Connection client;
+    final Connection server;
+    @Nullable
+    final Relay relay;
+
+    private ConnectionPair(@NotNull Connection client, @NotNull Connection server, @Nullable Relay relay) {
+        this.client = client;
+        this.server = server;
+        this.relay = relay;
+    }
+
+    @NotNull
+    static ConnectionPair open(@NotNull Factory factory) throws IOException {
+        return open(factory, 0, 0, 0, 0);
+    }
+
+    // The relay is only put in between when it has something to do.
+    @NotNull
+    static ConnectionPair open(@NotNull Factory factory, double loss, long delay, long rate, int queueSize) throws IOException {
+        var clientChannel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        var serverChannel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        Relay relay = null;
+        SocketAddress clientPeer = serverChannel.getLocalAddress();
+        SocketAddress serverPeer = clientChannel.getLocalAddress();
+        if (loss > 0 || delay > 0 || rate > 0) {
+            relay = new Relay(clientChannel.getLocalAddress(), serverChannel.getLocalAddress(), loss, delay, rate, queueSize);
+            clientPeer = relay.getAddress();
+            serverPeer = relay.getAddress();
+        }
+        var server = factory.create(serverChannel, serverPeer, true);
+        var client = factory.create(clientChannel, clientPeer, false);
+        return new ConnectionPair(client, server, relay);
+    }
+
+    // Messages can only be sent once the handshake is done, a first one is retried until then.
+    void awaitEstablished() throws IOException {
+        long deadline = System.nanoTime() + ESTABLISH_TIMEOUT;
+        while (true) {
+            try {
+                client.sendMessage(new byte[1]);
+                break;
+            } catch (IOException e) {
+                if (client.isDead() || System.nanoTime() - deadline > 0) throw e;
+                sleep();
+            }
+        }
+        server.receiveMessage();
+    }
+
+    static void readFully(@NotNull Connection connection, byte[] buffer, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int read = connection.read(buffer, Math.min(buffer.length, remaining));
+            if (read < 0) throw new EOFException("Connection closed with " + remaining + " bytes left");
+            remaining -= read;
+        }
+    }
+
+    private static void sleep() throws InterruptedIOException {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+        server.close();
+        if (relay != null) relay.close();
+    }
+
+    interface Factory {
+        @NotNull
+        Connection create(@NotNull DatagramChannel channel, @NotNull SocketAddress peerAddress, boolean server) throws IOException;
+    }
+}
@@ -0,0 +1,44 @@
+package org.softstar.stp.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.network.congestion.BBRController;
+import org.softstar.stp.network.congestion.CongestionController;
+import org.softstar.stp.network.congestion.CubicController;
+import org.softstar.stp.network.congestion.NewRenoController;
+import org.softstar.stp.network.connection.ConnectionEngine;
+import org.softstar.stp.network.connection.EventLoopEngine;
+import org.softstar.stp.network.connection.ThreadedEngine;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+// Maps benchmark parameters to engines and congestion controllers.
+final class Engines {
+    private Engines() {
+    }
+
+    // "platform" and "virtual" are the threaded engines, "loop" a fresh event loop engine that close shuts down.
+    @NotNull
+    static ConnectionEngine create(@NotNull String name) throws IOException {
+        return switch (name) {
+            case "platform" -> ThreadedEngine.PLATFORM;
+            case "virtual" -> ThreadedEngine.VIRTUAL;
+            case "loop" -> new EventLoopEngine();
+            default -> throw new IllegalArgumentException("Unknown engine: " + name);
+        };
+    }
+
+    static void close(@NotNull ConnectionEngine engine) {
+        if (engine instanceof EventLoopEngine loop) loop.close();
+    }
+
+    @NotNull
+    static Supplier<CongestionController> congestionControl(@NotNull String name) {
+        return switch (name) {
+            case "newreno" -> NewRenoController::new;
+            case "cubic" -> CubicController::new;
+            case "bbr" -> BBRController::new;
+            default -> throw new IllegalArgumentException("Unknown congestion control: " + name);
+        };
+    }
+}
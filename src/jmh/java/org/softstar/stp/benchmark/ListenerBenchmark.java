@@ -0,0 +1,123 @@
+package org.softstar.stp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.softstar.stp.network.connection.Connection;
+import org.softstar.stp.network.connection.ConnectionEngine;
+import org.softstar.stp.network.connection.ConnectionOptions;
+import org.softstar.stp.network.connection.ListeningConnection;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Many clients connecting to one listening socket at once and each sending a little data, which exercises
+// demultiplexing by peer address and how the engine copes with many mostly idle connections. The CPU time
+// of the whole process, clients included, is reported per connection as well. The largest count needs
+// a file descriptor limit above it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ListenerBenchmark {
+    private static final int WRITE_SIZE = 1024;
+
+    @Param({"platform", "virtual", "loop"})
+    public String engine;
+
+    @Param({"64", "512", "2048", "10000"})
+    public int connections;
+
+    private ConnectionEngine connectionEngine;
+    private ConnectionOptions options;
+    private ListeningConnection listener;
+    private SocketAddress listenerAddress;
+    private final List<Connection> clients = new ArrayList<>();
+    private final List<Connection> accepted = new ArrayList<>();
+    private ExecutorService acceptor;
+    private byte[] payload;
+    private byte[] readBuffer;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        connectionEngine = Engines.create(engine);
+        options = new ConnectionOptions().setEngine(connectionEngine);
+        payload = Payloads.random(WRITE_SIZE);
+        readBuffer = new byte[WRITE_SIZE];
+        acceptor = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        acceptor.shutdownNow();
+        Engines.close(connectionEngine);
+    }
+
+    @Setup(Level.Invocation)
+    public void setup() throws IOException {
+        var channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        listenerAddress = channel.getLocalAddress();
+        listener = ListeningConnection.open(channel, options);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        for (var connection : clients) connection.close();
+        for (var connection : accepted) connection.close();
+        clients.clear();
+        accepted.clear();
+        listener.close();
+    }
+
+    // The backlog is smaller than the largest counts, so the clients are accepted while others still connect.
+    // Reading waits until all are in, a Syn finding the backlog full is only answered after its retransmission.
+    @Benchmark
+    public void connectAndWrite(CpuCounters counters) throws IOException, InterruptedException, ExecutionException {
+        long cpuTime = ProcessStats.cpuTime();
+        var acceptedAll = acceptor.submit(() -> {
+            for (int i = 0; i < connections; ++i) accepted.add(listener.accept());
+            return null;
+        });
+        for (int i = 0; i < connections; ++i) {
+            var channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+            var client = new Connection(channel, listenerAddress, false, options);
+            clients.add(client);
+            client.write(payload);
+            client.flush();
+        }
+        acceptedAll.get();
+        for (var connection : accepted) ConnectionPair.readFully(connection, readBuffer, WRITE_SIZE);
+        counters.cpuTime += ProcessStats.cpuTime() - cpuTime;
+        counters.connections += connections;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CpuCounters {
+        private long cpuTime;
+        private long connections;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cpuTime = 0;
+            connections = 0;
+        }
+
+        public double cpuMicrosPerConnection() {
+            return connections == 0 ? 0 : cpuTime / 1e3 / connections;
+        }
+
+        // Connections set up per second of one core's time.
+        public double connectionsPerCoreSecond() {
+            return cpuTime == 0 ? 0 : connections * 1e9 / cpuTime;
+        }
+    }
+}
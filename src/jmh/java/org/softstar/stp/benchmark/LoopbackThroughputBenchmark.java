@@ -0,0 +1,62 @@
+package org.softstar.stp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.softstar.stp.network.connection.Connection;
+import org.softstar.stp.network.connection.ConnectionEngine;
+import org.softstar.stp.network.connection.ConnectionOptions;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Bulk transfer over loopback with nothing in between, what is left is the cost of the stack itself.
+// One operation is one mebibyte, the written bytes are read back on the benchmark thread.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackThroughputBenchmark {
+    private static final int TRANSFER_SIZE = 1 << 20;
+    private static final int WRITE_SIZE = 64 * 1024;
+
+    @Param({"platform", "virtual", "loop"})
+    public String engine;
+
+    private ConnectionEngine connectionEngine;
+    private ConnectionPair pair;
+    private ExecutorService writer;
+    private byte[] payload;
+    private byte[] readBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        connectionEngine = Engines.create(engine);
+        var options = new ConnectionOptions().setEngine(connectionEngine);
+        pair = ConnectionPair.open((channel, peer, server) -> new Connection(channel, peer, server, options));
+        writer = Executors.newSingleThreadExecutor();
+        payload = Payloads.random(WRITE_SIZE);
+        readBuffer = new byte[WRITE_SIZE];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.shutdownNow();
+        pair.close();
+        Engines.close(connectionEngine);
+    }
+
+    @Benchmark
+    public void transfer() throws IOException, InterruptedException, ExecutionException {
+        var written = writer.submit(() -> {
+            for (int sent = 0; sent < TRANSFER_SIZE; sent += WRITE_SIZE) pair.client.write(payload);
+            pair.client.flush();
+            return null;
+        });
+        ConnectionPair.readFully(pair.server, readBuffer, TRANSFER_SIZE);
+        written.get();
+    }
+}
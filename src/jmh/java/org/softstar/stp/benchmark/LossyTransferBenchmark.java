@@ -0,0 +1,134 @@
+package org.softstar.stp.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.softstar.stp.network.connection.Connection;
+import org.softstar.stp.network.connection.ConnectionOptions;
+import org.softstar.stp.network.connection.OutgoingPacket;
+import org.softstar.stp.network.decoder.CRC32PacketDecoder;
+import org.softstar.stp.network.encoder.CRC32PacketEncoder;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Time to move a fixed amount of data over a path with delay, random loss and optionally a bottleneck
+// with a shallow queue. Every shot starts on a fresh pair so slow start and loss recovery are included.
+// The datagrams the path dropped, at random or at the bottleneck, and the data packets the sender had to
+// send again are reported per transfer. Without pacing bursts overflow the queue, with parity most random
+// losses are recovered by the receiver instead of retransmitted.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LossyTransferBenchmark {
+    private static final int TRANSFER_SIZE = 2 << 20;
+    private static final int WRITE_SIZE = 64 * 1024;
+    private static final long DELAY = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int QUEUE_SIZE = 64 * 1024;
+
+    @Param({"0.01", "0.03", "0.05"})
+    public double loss;
+
+    @Param({"newreno", "cubic", "bbr"})
+    public String congestion;
+
+    @Param({"0", "8"})
+    public int parity;
+
+    // Bytes per second through the bottleneck, 0 for none.
+    @Param({"5000000"})
+    public long rate;
+
+    @Param({"true", "false"})
+    public boolean pacing;
+
+    @Param({"0"})
+    public int compressionLevel;
+
+    @Param({"random"})
+    public String payload;
+
+    private ConnectionPair pair;
+    private ExecutorService writer;
+    private byte[] chunk;
+    private byte[] readBuffer;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        writer = Executors.newSingleThreadExecutor();
+        chunk = Payloads.of(payload, WRITE_SIZE);
+        readBuffer = new byte[WRITE_SIZE];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        writer.shutdownNow();
+    }
+
+    @Setup(Level.Invocation)
+    public void setup() throws IOException {
+        var options = new ConnectionOptions()
+                .setCongestionControl(Engines.congestionControl(congestion))
+                .setParityGroupSize(parity)
+                .setPacing(pacing);
+        pair = ConnectionPair.open((channel, peer, server) -> new CountingConnection(channel, peer, server,
+                compressionLevel, options), loss, DELAY, rate, QUEUE_SIZE);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        pair.close();
+    }
+
+    @Benchmark
+    public void transfer(LossCounters counters) throws IOException, InterruptedException, ExecutionException {
+        var written = writer.submit(() -> {
+            for (int sent = 0; sent < TRANSFER_SIZE; sent += WRITE_SIZE) pair.client.write(chunk);
+            pair.client.flush();
+            return null;
+        });
+        ConnectionPair.readFully(pair.server, readBuffer, TRANSFER_SIZE);
+        written.get();
+        counters.dropped += pair.relay.getDropped();
+        counters.retransmitted += ((CountingConnection) pair.client).retransmitted.get();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class LossCounters {
+        public long dropped;
+        public long retransmitted;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            dropped = 0;
+            retransmitted = 0;
+        }
+    }
+
+    private static final class CountingConnection extends Connection {
+        final AtomicLong retransmitted = new AtomicLong();
+
+        CountingConnection(@NotNull DatagramChannel channel, @NotNull SocketAddress peerAddress, boolean isServer, int compressionLevel, @NotNull ConnectionOptions options) throws IOException {
+            super(channel, peerAddress, isServer ? ConnectionState.WAIT_SYN : ConnectionState.TO_SEND_SYN,
+                    new CRC32PacketEncoder(compressionLevel), new CRC32PacketDecoder(), options, false);
+            // Started only once the counter exists, the loop sends right away.
+            channel.configureBlocking(false);
+            start();
+        }
+
+        @Override
+        protected void sendData(@NotNull OutgoingPacket packet) {
+            if (packet.getTransmissions() > 0) retransmitted.incrementAndGet();
+            super.sendData(packet);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.softstar.stp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.softstar.stp.network.connection.Connection;
+import org.softstar.stp.network.connection.ConnectionEngine;
+import org.softstar.stp.network.connection.ConnectionOptions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Round trips of a message echoed back by the server, sampled so the percentiles show the cost of losses.
+// With loss a relay drops that share of the datagrams in both directions, parity lets most of them be
+// recovered without waiting for a retransmission. A batch puts several messages in flight at once, so a
+// lost one is retransmitted as soon as enough of the later ones are acknowledged, or with a duplicate ack
+// threshold of 0 only once the retransmission timeout fires. Losses among the last few of a batch always
+// wait for the timeout, so small batches show no difference.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageLatencyBenchmark {
+    @Param({"array", "buffer"})
+    public String api;
+
+    @Param({"64", "1024"})
+    public int size;
+
+    @Param({"0", "0.02"})
+    public double loss;
+
+    @Param({"0", "8"})
+    public int parity;
+
+    @Param({"platform"})
+    public String engine;
+
+    @Param({"1", "32"})
+    public int batch;
+
+    @Param({"3", "0"})
+    public int duplicateAckThreshold;
+
+    private ConnectionEngine connectionEngine;
+    private ConnectionPair pair;
+    private Thread echo;
+    private byte[] message;
+    private ByteBuffer sendBuffer;
+    private ByteBuffer receiveBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        connectionEngine = Engines.create(engine);
+        var options = new ConnectionOptions().setEngine(connectionEngine).setParityGroupSize(parity)
+                .setDuplicateAckThreshold(duplicateAckThreshold);
+        pair = ConnectionPair.open((channel, peer, server) -> new Connection(channel, peer, server, options), loss, 0, 0, 0);
+        pair.awaitEstablished();
+        message = Payloads.random(size);
+        sendBuffer = ByteBuffer.allocateDirect(size);
+        receiveBuffer = ByteBuffer.allocateDirect(size);
+        echo = new Thread(this::echo, "echo");
+        echo.setDaemon(true);
+        echo.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        pair.close();
+        echo.join();
+        Engines.close(connectionEngine);
+    }
+
+    private void echo() {
+        var buffer = ByteBuffer.allocateDirect(size);
+        try {
+            while (true) {
+                buffer.clear();
+                pair.server.receiveMessage(buffer);
+                buffer.flip();
+                pair.server.sendMessage(buffer);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Benchmark
+    public Object roundTrip() throws IOException {
+        if (api.equals("array")) {
+            for (int i = 0; i < batch; ++i) pair.client.sendMessage(message);
+            byte[] echoed = null;
+            for (int i = 0; i < batch; ++i) echoed = pair.client.receiveMessage();
+            return echoed;
+        }
+        for (int i = 0; i < batch; ++i) {
+            sendBuffer.clear();
+            pair.client.sendMessage(sendBuffer);
+        }
+        for (int i = 0; i < batch; ++i) {
+            receiveBuffer.clear();
+            pair.client.receiveMessage(receiveBuffer);
+        }
+        return receiveBuffer;
+    }
+}
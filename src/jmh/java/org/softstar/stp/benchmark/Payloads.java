@@ -0,0 +1,43 @@
+package org.softstar.stp.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+final class Payloads {
+    private static final String[] LEVELS = {"INFO", "WARN", "DEBUG", "ERROR"};
+
+    private Payloads() {
+    }
+
+    // "random" does not compress at all, "text" is JSON log lines that deflate to about a third.
+    static byte[] of(@NotNull String kind, int size) {
+        return switch (kind) {
+            case "random" -> random(size);
+            case "text" -> text(size);
+            default -> throw new IllegalArgumentException("Unknown payload: " + kind);
+        };
+    }
+
+    static byte[] random(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    static byte[] text(int size) {
+        var random = new Random(size);
+        var text = new StringBuilder(size + 256);
+        while (text.length() < size) {
+            text.append("{\"ts\":").append(1700000000000L + text.length())
+                    .append(",\"level\":\"").append(LEVELS[random.nextInt(LEVELS.length)])
+                    .append("\",\"thread\":\"worker-").append(random.nextInt(16))
+                    .append("\",\"msg\":\"request ").append(random.nextInt(100000))
+                    .append(" handled in ").append(random.nextInt(500))
+                    .append(" ms\",\"path\":\"/api/v1/items/").append(random.nextInt(1000)).append("\"}\n");
+        }
+        return Arrays.copyOf(text.toString().getBytes(StandardCharsets.US_ASCII), size);
+    }
+}
@@ -0,0 +1,31 @@
+package org.softstar.stp.benchmark;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+
+// Process wide resource figures for the benchmarks that report them next to the time.
+final class ProcessStats {
+    private ProcessStats() {
+    }
+
+    // Nanoseconds of CPU time used by all threads of the process so far.
+    static long cpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    // Heap in use after a full collection, as far as System.gc gets there.
+    static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    static long usedDirectMemory() {
+        for (var pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+            if (pool.getName().equals("direct")) return pool.getMemoryUsed();
+        return 0;
+    }
+
+    static int platformThreads() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+}
@@ -0,0 +1,127 @@
+package org.softstar.stp.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+// Forwards datagrams between two endpoints like a path with random loss and a one-way delay. With a rate set
+// each direction also has a bottleneck of that many bytes per second behind a tail-drop queue.
+final class Relay implements AutoCloseable {
+    private static final long IDLE_PARK = 20_000;
+
+    private final DatagramChannel channel;
+    private final SocketAddress first;
+    private final SocketAddress second;
+    private final double loss;
+    private final long delay;
+    private final long rate;
+    private final int queueSize;
+    private final Thread thread;
+    // Datagrams leaving at the same time keep their order.
+    private final PriorityQueue<Datagram> inFlight = new PriorityQueue<>((a, b) -> a.departure != b.departure
+            ? Long.signum(a.departure - b.departure) : Long.compare(a.sequence, b.sequence));
+    private final long[] busyUntil = new long[2];
+    private long sequence = 0;
+    private volatile long received = 0;
+    private volatile long dropped = 0;
+
+    Relay(@NotNull SocketAddress first, @NotNull SocketAddress second, double loss, long delay, long rate, int queueSize) throws IOException {
+        this.first = first;
+        this.second = second;
+        this.loss = loss;
+        this.delay = delay;
+        this.rate = rate;
+        this.queueSize = queueSize;
+        this.channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        channel.configureBlocking(false);
+        this.thread = new Thread(this::run, "relay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @NotNull
+    SocketAddress getAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    long getReceived() {
+        return received;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+
+    private void run() {
+        var random = new Random(42);
+        var buffer = ByteBuffer.allocateDirect(1 << 16);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                buffer.clear();
+                var from = channel.receive(buffer);
+                long now = System.nanoTime();
+                if (from != null) {
+                    buffer.flip();
+                    forward(from, buffer, now, random);
+                }
+                while (!inFlight.isEmpty() && inFlight.peek().departure - now <= 0) {
+                    var datagram = inFlight.poll();
+                    channel.send(ByteBuffer.wrap(datagram.data), datagram.target);
+                }
+                if (from == null && inFlight.isEmpty()) LockSupport.parkNanos(IDLE_PARK);
+                else if (from == null) Thread.onSpinWait();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void forward(@NotNull SocketAddress from, @NotNull ByteBuffer buffer, long now, @NotNull Random random) {
+        ++received;
+        int direction = from.equals(first) ? 0 : 1;
+        if (random.nextDouble() < loss) {
+            ++dropped;
+            return;
+        }
+        long departure = now;
+        if (rate > 0) {
+            long start = Math.max(now, busyUntil[direction]);
+            // Bytes still waiting for the bottleneck ahead of this datagram.
+            if ((start - now) * rate / 1_000_000_000L + buffer.remaining() > queueSize) {
+                ++dropped;
+                return;
+            }
+            busyUntil[direction] = start + buffer.remaining() * 1_000_000_000L / rate;
+            departure = busyUntil[direction];
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        inFlight.add(new Datagram(data, direction == 0 ? second : first, departure + delay, sequence++));
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        channel.close();
+    }
+
+    private static final class Datagram {
+        final byte[] data;
+        final SocketAddress target;
+        final long departure;
+        final long sequence;
+
+        Datagram(byte[] data, SocketAddress target, long departure, long sequence) {
+            this.data = data;
+            this.target = target;
+            this.departure = departure;
+            this.sequence = sequence;
+        }
+    }
+}
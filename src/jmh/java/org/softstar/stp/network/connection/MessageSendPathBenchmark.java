@@ -0,0 +1,84 @@
+package org.softstar.stp.network.connection;
+
+import org.openjdk.jmh.annotations.*;
+import org.softstar.stp.network.decoder.CRC32PacketDecoder;
+import org.softstar.stp.network.encoder.CRC32PacketEncoder;
+import org.softstar.stp.network.packet.DataAckPacket;
+import org.softstar.stp.network.packet.SynPacket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// A message from sendMessage to the encoded datagram, without sockets or a loop thread. Counts how often the
+// payload is copied on the way: once into the queued frame, and once more whenever the encoder cannot write
+// the header in front of it. The channel copies heap datagrams once more into a direct buffer, that one is not
+// counted. Run with -prof gc for the bytes allocated per message.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSendPathBenchmark {
+    private static final long FIRST_SEQ_NUMBER = 1000;
+
+    @Param({"64", "1024"})
+    public int messageSize;
+
+    @Param({"0", "6"})
+    public int compressionLevel;
+
+    // Whether the packet goes out as a data ack, whose header is longer.
+    @Param({"false", "true"})
+    public boolean acknowledging;
+
+    private Connection connection;
+    private ByteBuffer message;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        connection = new Connection(DatagramChannel.open(), new InetSocketAddress("127.0.0.1", 9), Connection.ConnectionState.WAIT_SYN,
+                new CRC32PacketEncoder(compressionLevel), new CRC32PacketDecoder(), new ConnectionOptions(), false);
+        connection.onRecvPacket(new SynPacket(FIRST_SEQ_NUMBER, connection.getLocalFeatures()));
+        byte[] payload = new byte[messageSize];
+        new Random(messageSize).nextBytes(payload);
+        message = ByteBuffer.wrap(payload);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        connection.close();
+    }
+
+    @Benchmark
+    public ByteBuffer send(CopyCounters counters) throws IOException {
+        connection.sendMessage(message.rewind());
+        var data = connection.nextPacket().getPacket();
+        var packet = acknowledging ? new DataAckPacket(data, FIRST_SEQ_NUMBER, 256) : data;
+        var datagram = connection.encodePacket(packet);
+        ++counters.messages;
+        counters.copies += datagram == data.getHeadroomBuffer() ? 1 : 2;
+        return datagram;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CopyCounters {
+        private long messages;
+        private long copies;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            messages = 0;
+            copies = 0;
+        }
+
+        public double copiesPerMessage() {
+            return messages == 0 ? 0 : (double) copies / messages;
+        }
+    }
+}
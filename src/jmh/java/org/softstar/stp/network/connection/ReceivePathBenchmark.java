@@ -0,0 +1,111 @@
+package org.softstar.stp.network.connection;
+
+import org.openjdk.jmh.annotations.*;
+import org.softstar.stp.network.decoder.BasicPacketDecoder;
+import org.softstar.stp.network.encoder.BasicPacketEncoder;
+import org.softstar.stp.network.packet.AckPacket;
+import org.softstar.stp.network.packet.DataPacket;
+import org.softstar.stp.network.packet.Features;
+import org.softstar.stp.network.packet.StreamFrame;
+import org.softstar.stp.network.packet.SynPacket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+// The receive path from a queued datagram on, without sockets or a loop thread: datagrams come from the receive
+// pool, go through the receive queue and are decoded in place, the payload stays in the datagram until read.
+// Each is a copy of one encoded packet with its sequence numbers stamped in, so there is no checksum, see
+// CodecBenchmark for that. The benchmark sits in this package to drive an unstarted server connection directly.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceivePathBenchmark {
+    private static final long FIRST_SEQ_NUMBER = 1000;
+    private static final int DRAIN_INTERVAL = 64;
+    // The plain layout: type, sequence number, payload. A stream frame starts with the stream id.
+    private static final int SEQ_OFFSET = Byte.BYTES;
+    private static final int STREAM_SEQ_OFFSET = SEQ_OFFSET + Long.BYTES + Integer.BYTES;
+
+    @Param({"false", "true"})
+    public boolean streams;
+
+    @Param({"64", "1200"})
+    public int payloadSize;
+
+    private Connection connection;
+    private AckPacket duplicateAck;
+    private ByteBuffer template;
+    private byte[] drainBuffer;
+    private long seqNumber;
+    private int sinceDrain;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        connection = new Connection(DatagramChannel.open(), new InetSocketAddress("127.0.0.1", 9), Connection.ConnectionState.WAIT_SYN,
+                new BasicPacketEncoder(), new BasicPacketDecoder(), new ConnectionOptions(), false);
+        connection.useReceiveQueue();
+        int features = connection.getLocalFeatures();
+        if (!streams) features &= ~Features.STREAMS;
+        connection.onRecvPacket(new SynPacket(FIRST_SEQ_NUMBER, features));
+        duplicateAck = new AckPacket(FIRST_SEQ_NUMBER, connection.nextSeqNumber, 256);
+        byte[] payload = new byte[(streams ? StreamFrame.HEADER_LENGTH : 0) + payloadSize];
+        template = new BasicPacketEncoder().toByteBuffer(DataPacket.wrap(FIRST_SEQ_NUMBER, payload));
+        drainBuffer = new byte[1 << 16];
+        seqNumber = FIRST_SEQ_NUMBER;
+        sinceDrain = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        connection.close();
+    }
+
+    // Each packet gets its own datagram, a packet held for reordering keeps it until its payload is read.
+    private void offer(long seq) {
+        var datagram = Connection.RECEIVE_POOL.acquire().clear();
+        datagram.put(0, template, 0, template.remaining()).limit(template.remaining());
+        datagram.putLong(SEQ_OFFSET, seq);
+        if (streams) datagram.putLong(STREAM_SEQ_OFFSET, seq - FIRST_SEQ_NUMBER);
+        connection.offer(datagram);
+    }
+
+    // Reads what was delivered and drops the acks and window updates the connection queued meanwhile.
+    private void drainIfDue(int packets) throws IOException {
+        sinceDrain += packets;
+        if (sinceDrain < DRAIN_INTERVAL) return;
+        sinceDrain = 0;
+        connection.sendQueue.clear();
+        int available;
+        while ((available = connection.receivePipe.available()) > 0)
+            connection.read(drainBuffer, Math.min(available, drainBuffer.length));
+    }
+
+    @Benchmark
+    public void inOrder() throws IOException {
+        offer(seqNumber++);
+        connection.receivePackets(1);
+        drainIfDue(1);
+    }
+
+    // Every second packet arrives early and waits in the receive window for the one before it.
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void swappedPairs() throws IOException {
+        offer(seqNumber + 1);
+        offer(seqNumber);
+        seqNumber += 2;
+        connection.receivePackets(2);
+        drainIfDue(2);
+    }
+
+    @Benchmark
+    public void duplicateAck() {
+        connection.onRecvPacket(duplicateAck);
+    }
+}
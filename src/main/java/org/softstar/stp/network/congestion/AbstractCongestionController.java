@@ -0,0 +1,52 @@
+package org.softstar.stp.network.congestion;
+
+import java.util.concurrent.TimeUnit;
+
+public abstract class AbstractCongestionController implements CongestionController {
+    public static final int DEFAULT_INITIAL_WINDOW = 16;
+    public static final int DEFAULT_MIN_WINDOW = 2;
+    public static final int DEFAULT_MAX_WINDOW = 1024;
+    protected static final double PACING_GAIN = 1.25;
+    protected static final double SLOW_START_PACING_GAIN = 2;
+
+    protected final int minWindow;
+    protected final int maxWindow;
+    protected double window;
+
+    protected AbstractCongestionController(int initialWindow, int minWindow, int maxWindow) {
+        if (minWindow < 1 || minWindow > maxWindow || initialWindow < minWindow || initialWindow > maxWindow)
+            throw new IllegalArgumentException("Invalid window bounds");
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.window = initialWindow;
+    }
+
+    protected AbstractCongestionController() {
+        this(DEFAULT_INITIAL_WINDOW, DEFAULT_MIN_WINDOW, DEFAULT_MAX_WINDOW);
+    }
+
+    @Override
+    public void onRttSample(long now, long rtt) {
+    }
+
+    @Override
+    public int getWindow() {
+        return (int) window;
+    }
+
+    // Paces a window per round trip, with headroom so that the window and not the pacer is the limit.
+    @Override
+    public double getPacingRate(long smoothedRtt) {
+        if (smoothedRtt <= 0) return 0;
+        double gain = isSlowStart() ? SLOW_START_PACING_GAIN : PACING_GAIN;
+        return gain * window * TimeUnit.SECONDS.toNanos(1) / smoothedRtt;
+    }
+
+    protected boolean isSlowStart() {
+        return false;
+    }
+
+    protected void setWindow(double window) {
+        this.window = Math.clamp(window, minWindow, maxWindow);
+    }
+}
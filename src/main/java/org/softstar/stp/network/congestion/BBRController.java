@@ -0,0 +1,143 @@
+package org.softstar.stp.network.congestion;
+
+import java.util.concurrent.TimeUnit;
+
+// Delay-based controller in the spirit of BBR: the window follows the measured bandwidth-delay product
+// instead of reacting to loss, which keeps queues short on bufferbloat-prone links.
+public class BBRController extends AbstractCongestionController {
+    protected static final double WINDOW_GAIN = 2;
+    protected static final double STARTUP_GAIN = 2 / Math.log(2);
+    protected static final double[] PROBE_GAINS = {1.25, 0.75, 1, 1, 1, 1, 1, 1};
+    protected static final int BANDWIDTH_FILTER_ROUNDS = 10;
+    protected static final int FULL_BANDWIDTH_ROUNDS = 3;
+    protected static final double FULL_BANDWIDTH_GROWTH = 1.25;
+    protected static final long MIN_RTT_EXPIRY = TimeUnit.SECONDS.toNanos(10);
+    protected static final long PROBE_RTT_DURATION = TimeUnit.MILLISECONDS.toNanos(200);
+
+    protected enum Mode {
+        STARTUP, DRAIN, PROBE_BANDWIDTH, PROBE_RTT
+    }
+
+    protected final double[] bandwidthSamples = new double[BANDWIDTH_FILTER_ROUNDS];
+    protected Mode mode = Mode.STARTUP;
+    protected long minRtt = Long.MAX_VALUE;
+    protected long minRttStamp = 0;
+    protected long roundStart = 0;
+    protected boolean roundStarted = false;
+    protected int roundDelivered = 0;
+    protected long roundCount = 0;
+    protected double fullBandwidth = 0;
+    protected int fullBandwidthRounds = 0;
+    protected int probeCycle = 0;
+    protected long probeRttEnd = 0;
+
+    public BBRController(int initialWindow, int minWindow, int maxWindow) {
+        super(initialWindow, minWindow, maxWindow);
+    }
+
+    public BBRController() {
+    }
+
+    @Override
+    public void onRttSample(long now, long rtt) {
+        if (rtt <= minRtt || now - minRttStamp > MIN_RTT_EXPIRY) {
+            if (rtt > minRtt && mode != Mode.STARTUP && mode != Mode.PROBE_RTT) {
+                mode = Mode.PROBE_RTT;
+                probeRttEnd = now + Math.max(PROBE_RTT_DURATION, minRtt);
+            }
+            minRtt = rtt;
+            minRttStamp = now;
+        }
+    }
+
+    @Override
+    public void onPacketsAcked(long now, int count) {
+        if (!roundStarted) {
+            roundStarted = true;
+            roundStart = now;
+        }
+        roundDelivered += count;
+        if (minRtt != Long.MAX_VALUE && now - roundStart >= minRtt) endRound(now);
+
+        switch (mode) {
+            case STARTUP -> setWindow(window + count);
+            case DRAIN -> setWindow(getBdp());
+            case PROBE_BANDWIDTH -> setWindow(getBdp() * WINDOW_GAIN * PROBE_GAINS[probeCycle]);
+            case PROBE_RTT -> {
+                setWindow(minWindow);
+                if (now - probeRttEnd >= 0) {
+                    minRttStamp = now;
+                    mode = Mode.PROBE_BANDWIDTH;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onLoss(long now) {
+    }
+
+    @Override
+    public void onTimeout(long now) {
+        setWindow(minWindow);
+    }
+
+    // The pacing rate is what actually drives BBR, the window only bounds the data in flight.
+    @Override
+    public double getPacingRate(long smoothedRtt) {
+        double bandwidth = getBandwidth();
+        if (bandwidth == 0) return super.getPacingRate(smoothedRtt);
+        return bandwidth * switch (mode) {
+            case STARTUP -> STARTUP_GAIN;
+            case DRAIN -> 1 / STARTUP_GAIN;
+            case PROBE_BANDWIDTH -> PROBE_GAINS[probeCycle];
+            case PROBE_RTT -> 1;
+        };
+    }
+
+    @Override
+    protected boolean isSlowStart() {
+        return mode == Mode.STARTUP;
+    }
+
+    // Packets per second, 0 before the first full round.
+    public double getBandwidth() {
+        return getMaxBandwidth() * 1e9;
+    }
+
+    public long getMinRtt() {
+        return minRtt;
+    }
+
+    protected double getMaxBandwidth() {
+        double max = 0;
+        for (double sample : bandwidthSamples) max = Math.max(max, sample);
+        return max;
+    }
+
+    protected double getBdp() {
+        return getMaxBandwidth() * minRtt;
+    }
+
+    protected void endRound(long now) {
+        bandwidthSamples[(int) (roundCount++ % BANDWIDTH_FILTER_ROUNDS)] = (double) roundDelivered / (now - roundStart);
+        roundDelivered = 0;
+        roundStart = now;
+
+        switch (mode) {
+            case STARTUP -> {
+                double bandwidth = getMaxBandwidth();
+                if (bandwidth >= fullBandwidth * FULL_BANDWIDTH_GROWTH) {
+                    fullBandwidth = bandwidth;
+                    fullBandwidthRounds = 0;
+                } else if (++fullBandwidthRounds >= FULL_BANDWIDTH_ROUNDS) {
+                    mode = Mode.DRAIN;
+                }
+            }
+            case DRAIN -> mode = Mode.PROBE_BANDWIDTH;
+            case PROBE_BANDWIDTH -> probeCycle = (probeCycle + 1) % PROBE_GAINS.length;
+            case PROBE_RTT -> {
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.softstar.stp.network.congestion;
+
+// Windows are counted in data packets, timestamps and durations are System.nanoTime() nanoseconds.
+public interface CongestionController {
+    void onPacketsAcked(long now, int count);
+
+    void onRttSample(long now, long rtt);
+
+    // Called once per recovery episode, when the first hole is detected.
+    void onLoss(long now);
+
+    void onTimeout(long now);
+
+    int getWindow();
+
+    // Data packets per second to spread transmissions at, 0 if no rate can be derived yet.
+    double getPacingRate(long smoothedRtt);
+}
@@ -0,0 +1,74 @@
+package org.softstar.stp.network.congestion;
+
+public class CubicController extends AbstractCongestionController {
+    protected static final double C = 0.4;
+    protected static final double BETA = 0.7;
+    protected static final double NANOS_PER_SECOND = 1e9;
+
+    protected double slowStartThreshold = Double.MAX_VALUE;
+    protected double maxBeforeReduction = 0;
+    protected double renoWindow = 0;
+    protected double k = 0;
+    protected long epochStart = 0;
+    protected boolean inEpoch = false;
+    protected long minRtt = Long.MAX_VALUE;
+
+    public CubicController(int initialWindow, int minWindow, int maxWindow) {
+        super(initialWindow, minWindow, maxWindow);
+    }
+
+    public CubicController() {
+    }
+
+    @Override
+    public void onRttSample(long now, long rtt) {
+        minRtt = Math.min(minRtt, rtt);
+    }
+
+    @Override
+    public void onPacketsAcked(long now, int count) {
+        if (window < slowStartThreshold) {
+            setWindow(Math.min(window + count, slowStartThreshold));
+            return;
+        }
+
+        if (!inEpoch) {
+            inEpoch = true;
+            epochStart = now;
+            k = window < maxBeforeReduction ? Math.cbrt((maxBeforeReduction - window) / C) : 0;
+            if (window > maxBeforeReduction) maxBeforeReduction = window;
+            renoWindow = window;
+        }
+
+        long rtt = minRtt == Long.MAX_VALUE ? 0 : minRtt;
+        double t = (now - epochStart + rtt) / NANOS_PER_SECOND - k;
+        double target = C * t * t * t + maxBeforeReduction;
+        double next = target > window ? window + (target - window) / window * count : window + 0.01 * count / window;
+
+        // Never grow slower than Reno would on the same path.
+        renoWindow += 3 * (1 - BETA) / (1 + BETA) * count / window;
+        setWindow(Math.max(next, renoWindow));
+    }
+
+    @Override
+    public void onLoss(long now) {
+        // Fast convergence: release bandwidth sooner when the previous peak was not reached.
+        maxBeforeReduction = window < maxBeforeReduction ? window * (1 + BETA) / 2 : window;
+        slowStartThreshold = Math.max(window * BETA, minWindow);
+        setWindow(slowStartThreshold);
+        inEpoch = false;
+    }
+
+    @Override
+    public void onTimeout(long now) {
+        maxBeforeReduction = window;
+        slowStartThreshold = Math.max(window * BETA, minWindow);
+        setWindow(minWindow);
+        inEpoch = false;
+    }
+
+    @Override
+    protected boolean isSlowStart() {
+        return window < slowStartThreshold;
+    }
+}
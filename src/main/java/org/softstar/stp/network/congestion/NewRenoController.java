@@ -0,0 +1,35 @@
+package org.softstar.stp.network.congestion;
+
+public class NewRenoController extends AbstractCongestionController {
+    protected double slowStartThreshold = Double.MAX_VALUE;
+
+    public NewRenoController(int initialWindow, int minWindow, int maxWindow) {
+        super(initialWindow, minWindow, maxWindow);
+    }
+
+    public NewRenoController() {
+    }
+
+    @Override
+    public void onPacketsAcked(long now, int count) {
+        if (window < slowStartThreshold) setWindow(Math.min(window + count, slowStartThreshold));
+        else setWindow(window + (double) count / window);
+    }
+
+    @Override
+    public void onLoss(long now) {
+        slowStartThreshold = Math.max(window / 2, minWindow);
+        setWindow(slowStartThreshold);
+    }
+
+    @Override
+    public void onTimeout(long now) {
+        slowStartThreshold = Math.max(window / 2, minWindow);
+        setWindow(minWindow);
+    }
+
+    @Override
+    protected boolean isSlowStart() {
+        return window < slowStartThreshold;
+    }
+}
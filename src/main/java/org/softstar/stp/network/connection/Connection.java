@@ -3,86 +3,195 @@ package org.softstar.stp.network.connection;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.softstar.stp.exception.CorruptedPacketException;
+import org.softstar.stp.network.congestion.CongestionController;
 import org.softstar.stp.network.decoder.AbstractPacketDecoder;
 import org.softstar.stp.network.decoder.CRC32PacketDecoder;
 import org.softstar.stp.network.encoder.AbstractPacketEncoder;
 import org.softstar.stp.network.encoder.CRC32PacketEncoder;
 import org.softstar.stp.network.packet.*;
+import org.softstar.stp.utils.BufferPool;
+import org.softstar.stp.utils.BytePipe;
 import org.softstar.stp.utils.CircularArray;
+import org.softstar.stp.utils.TimerWheel;
+
+import jdk.net.ExtendedSocketOptions;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Connection implements AutoCloseable {
-    protected static final int INITIAL_WINDOW_SIZE = 16;
-    protected static final int MIN_WINDOW_SIZE = 4;
-    protected static final int MAX_WINDOW_SIZE = 128;
-    protected static final int SEND_QUEUE_SIZE = 1024;
+    protected static final int MAX_WINDOW_SIZE = 1024;
+    protected static final int SEND_QUEUE_SIZE = MAX_WINDOW_SIZE * 2;
+
+    protected static final int RECEIVE_BATCH = 64;
+    protected static final int WRITE_CHUNK_SIZE = 65536;
 
-    protected static final long TICK_LENGTH = 25;
-    protected static final long RESEND_TICK = 30;
-    protected static final int RESEND_LIMIT = 50;
-    protected static final long TIMEOUT_TICK = RESEND_TICK * RESEND_LIMIT * 2;
-    protected static final long IDLE_WAIT_TICK = RESEND_TICK * 10;
+    protected static final int WINDOW_UPDATE_THRESHOLD = 64;
+    protected static final long ACK_DELAY = TimeUnit.MILLISECONDS.toNanos(25);
+    protected static final long INITIAL_RTO = TimeUnit.MILLISECONDS.toNanos(750);
+    protected static final long MIN_RTO = ACK_DELAY * 2;
+    protected static final long MAX_RTO = TimeUnit.SECONDS.toNanos(2);
+    protected static final long CONNECTION_TIMEOUT = TimeUnit.SECONDS.toNanos(75);
+    protected static final long IDLE_WAIT = INITIAL_RTO * 10;
+    protected static final long KEEPALIVE_INTERVAL = CONNECTION_TIMEOUT / 5;
+    protected static final long SEND_POLL_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+    protected static final long SEND_RETRY_DELAY = TimeUnit.MILLISECONDS.toNanos(1);
+    protected static final long PACING_BURST = TimeUnit.MILLISECONDS.toNanos(1);
+    protected static final long STREAM_ACCEPT_POLL = TimeUnit.MILLISECONDS.toNanos(25);
+    // Consecutive timeouts of full-size segments taken as a path MTU black hole.
+    protected static final int BLACK_HOLE_TIMEOUTS = 3;
 
     protected static final int DATA_PACKET_SIZE = 16384;
-    protected static final int PIPE_SIZE = DATA_PACKET_SIZE * MAX_WINDOW_SIZE * 2;
+    protected static final int MAX_DATAGRAM_SIZE = DATA_PACKET_SIZE + 64;
+    protected static final int RECEIVE_POOL_CAPACITY = 4096;
+    protected static final BufferPool RECEIVE_POOL = new BufferPool(MAX_DATAGRAM_SIZE, RECEIVE_POOL_CAPACITY);
+    private static final ReentrantLock DONT_FRAGMENT_LOCK = new ReentrantLock();
+    protected static final int RECEIVE_QUEUE_SIZE = 1024;
+    protected static final int PIPE_SIZE = 1 << 22;
+    protected static final int MESSAGE_QUEUE_SIZE = 1024;
+    // Received messages up to this length are copied out of their datagram, so are all once this many wait.
+    protected static final int MESSAGE_COPY_LENGTH = 1024;
+    protected static final int MAX_PINNED_MESSAGES = 64;
+    protected static final int LOSS_SAMPLE_SIZE = 64;
+    // Marks a receive window slot whose packet was handed to its stream on arrival.
+    protected static final DataPacket DISPATCHED = new DataPacket(0, new byte[0]);
 
-    protected final PipedInputStream dataSendInputStream = new PipedInputStream(PIPE_SIZE);
-    protected final PipedOutputStream dataSendOutputStream;
-    protected final PipedOutputStream dataReceiveOutputStream = new PipedOutputStream();
-    protected final PipedInputStream dataReceiveInputStream;
+    protected final BytePipe sendPipe = new BytePipe(PIPE_SIZE);
+    protected final BytePipe receivePipe = new BytePipe(PIPE_SIZE);
+    protected final ReentrantLock readLock = new ReentrantLock();
+    protected final ReentrantLock writeLock = new ReentrantLock();
     protected final BlockingDeque<Packet> sendQueue = new LinkedBlockingDeque<>(SEND_QUEUE_SIZE);
-    protected final CircularArray<DataPacket> sendWindow = new CircularArray<>(MAX_WINDOW_SIZE);
+    protected final CircularArray<OutgoingPacket> sendWindow = new CircularArray<>(MAX_WINDOW_SIZE);
     protected final CircularArray<DataPacket> receiveWindow = new CircularArray<>(MAX_WINDOW_SIZE, MAX_WINDOW_SIZE);
-    protected final AbstractPacketDecoder packetDecoder;
-    protected final AbstractPacketEncoder packetEncoder;
+    protected volatile AbstractPacketDecoder packetDecoder;
+    protected volatile AbstractPacketEncoder packetEncoder;
+    protected final ConnectionOptions options;
     protected final DatagramChannel channel;
     protected final SocketAddress peerAddress;
     protected volatile ConnectionState state;
-    protected long tick = 0;
-    protected int windowSize = INITIAL_WINDOW_SIZE;
+    protected ByteBuffer receiveBuffer = null;
+    protected BlockingQueue<ByteBuffer> receiveQueue = null;
+    // The packets of the datagram being handled, touched by the loop thread only.
+    protected final List<Packet> receivedPackets = new ArrayList<>();
+    protected ByteBuffer sendBuffer = null;
+    protected long now = System.nanoTime();
+    protected final CongestionController congestionController;
+    protected int windowSize;
     protected long nextSeqNumber;
     protected long ackedNum = 0;
-    protected long tickMark = 0;
-    protected int waitRecord = 0;
-    protected long timeoutMark = 0;
+    protected long timerMark = now;
+    protected long progressMark = now;
+    protected volatile long smoothedRtt = 0;
+    protected volatile long rttVariance = 0;
+    protected volatile long retransmitTimeout = INITIAL_RTO;
+    protected long rttSample = Long.MAX_VALUE;
+    protected long peerAckNumber = 0;
+    protected int peerWindow = MAX_WINDOW_SIZE;
+    protected volatile int advertisedWindow = MAX_WINDOW_SIZE;
+    protected volatile boolean windowUpdateRequested = false;
+    protected int features = 0;
+    protected boolean dontFragment = false;
+    protected PathMtuProber mtuProber = null;
+    protected volatile int refusedDatagramSize = 0;
+    protected int consecutiveTimeouts = 0;
+    protected int segmentSize = DATA_PACKET_SIZE;
+    protected int dataOverhead = 0;
+    protected int bundleOverhead = 0;
+    protected int largestReceivedPayload = 0;
+    protected volatile boolean noDelay;
+    protected volatile boolean corked = false;
+    protected volatile long bytesWritten = 0;
+    protected volatile long flushMark = 0;
+    protected long bytesPacketized = 0;
+    protected long nextSendTime = now;
+    protected final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+    protected final BlockingQueue<Stream> acceptedStreams = new LinkedBlockingQueue<>();
+    protected final Queue<Stream> streamEvents = new ConcurrentLinkedQueue<>();
+    protected final List<Stream> activeStreams = new ArrayList<>();
+    protected final AtomicInteger nextStreamId;
+    protected int highestPeerStreamId;
+    protected int peerStreams = 0;
+    protected final AtomicInteger localStreams = new AtomicInteger();
+    // Until the handshake tells otherwise the peer is assumed to allow as many streams as this side does.
+    protected volatile int peerMaxStreams;
+    protected int streamCursor = 0;
+    protected volatile Stream defaultStream = null;
+    protected volatile boolean featuresApplied = false;
+    protected final BlockingQueue<PendingMessage> messageQueue = new LinkedBlockingQueue<>(MESSAGE_QUEUE_SIZE);
+    protected final BlockingQueue<StreamFrame> receivedMessages = new ArrayBlockingQueue<>(MESSAGE_QUEUE_SIZE);
+    protected ParityGroup parityGroup = null;
+    protected ParityRecovery parityRecovery = null;
+    protected int sampledPackets = 0;
+    protected int lostPackets = 0;
+    protected double lossRate = 0;
+    protected long lastReceiveTime = now;
+    protected long nextAckTime = now + KEEPALIVE_INTERVAL;
+    protected boolean ackPending = false;
+    protected int unackedPackets = 0;
+    protected final int[] sackBlocks = new int[SackPacket.MAX_BLOCKS * 2];
+    protected boolean recovering = false;
+    protected long recoveryStart;
+    protected long recoveryPoint;
     protected volatile boolean finalized = false;
     protected boolean otherFinalized = false;
     protected volatile Exception deadReason = null;
+    volatile EventLoop eventLoop = null;
+    SelectionKey selectionKey = null;
+    TimerWheel.Timer<Connection> timer = null;
+    private volatile Selector loopSelector = null;
+    private volatile Thread loopThread = null;
 
-    {
-        try {
-            dataSendOutputStream = new PipedOutputStream(dataSendInputStream);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-        try {
-            dataReceiveInputStream = new PipedInputStream(dataReceiveOutputStream, PIPE_SIZE);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    public Connection(DatagramChannel channel, SocketAddress peerAddress, ConnectionState initialState, AbstractPacketEncoder encoder, AbstractPacketDecoder decoder, ConnectionOptions options) throws IOException {
+        this(channel, peerAddress, initialState, encoder, decoder, options, true);
     }
 
-    public Connection(DatagramChannel channel, SocketAddress peerAddress, ConnectionState initialState, AbstractPacketEncoder encoder, AbstractPacketDecoder decoder) throws IOException {
+    protected Connection(DatagramChannel channel, SocketAddress peerAddress, ConnectionState initialState, AbstractPacketEncoder encoder, AbstractPacketDecoder decoder, ConnectionOptions options, boolean start) throws IOException {
         this.packetEncoder = encoder;
         this.packetDecoder = decoder;
+        this.options = options;
+        this.congestionController = options.getCongestionControl().get();
+        this.noDelay = options.isNoDelay();
+        this.windowSize = Math.clamp(congestionController.getWindow(), 1, MAX_WINDOW_SIZE);
         this.nextSeqNumber = ThreadLocalRandom.current().nextLong(1, Integer.MAX_VALUE);
         this.state = initialState;
+        // The initiating side opens odd streams, the other side even ones, stream 0 is the connection itself.
+        boolean server = initialState == ConnectionState.WAIT_SYN;
+        this.nextStreamId = new AtomicInteger(server ? 2 : 1);
+        this.highestPeerStreamId = server ? -1 : 0;
+        this.peerMaxStreams = options.getMaxConcurrentStreams();
         this.channel = channel;
         this.peerAddress = peerAddress;
-        channel.configureBlocking(false);
-        new Thread(this::sendLoop).start();
-        new Thread(this::loop).start();
+        if (start) {
+            channel.configureBlocking(false);
+            start();
+        }
+    }
+
+    public Connection(DatagramChannel channel, SocketAddress peerAddress, ConnectionState initialState, AbstractPacketEncoder encoder, AbstractPacketDecoder decoder) throws IOException {
+        this(channel, peerAddress, initialState, encoder, decoder, new ConnectionOptions());
     }
 
     public Connection(DatagramChannel channel, SocketAddress peerAddress, ConnectionState initialState) throws IOException {
@@ -97,34 +206,129 @@ public class Connection implements AutoCloseable {
         this(channel, peerAddress, isServer ? ConnectionState.WAIT_SYN : ConnectionState.TO_SEND_SYN, encoder, decoder);
     }
 
-    @Nullable
-    protected Packet tryRecvPacket() {
-        ByteBuffer buffer = ByteBuffer.allocate(65535);
+    public Connection(DatagramChannel channel, SocketAddress peerAddress, boolean isServer, ConnectionOptions options) throws IOException {
+        this(channel, peerAddress, isServer ? ConnectionState.WAIT_SYN : ConnectionState.TO_SEND_SYN, new CRC32PacketEncoder(), new CRC32PacketDecoder(), options);
+    }
+
+    protected void start() throws IOException {
+        // A shared channel belongs to the listener, which sets the flag once for all its connections.
+        if (options.isPathMtuDiscovery() && ownsChannel()) dontFragment = enableDontFragment(channel);
+        options.getEngine().register(this);
+    }
+
+    // Without the don't fragment bit oversized probes would get through fragmented, discovery is skipped then.
+    protected static boolean enableDontFragment(@NotNull DatagramChannel channel) {
+        if (!channel.supportedOptions().contains(ExtendedSocketOptions.IP_DONTFRAGMENT)) return false;
+        try {
+            channel.setOption(ExtendedSocketOptions.IP_DONTFRAGMENT, true);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    protected static boolean disableDontFragment(@NotNull DatagramChannel channel) {
+        try {
+            channel.setOption(ExtendedSocketOptions.IP_DONTFRAGMENT, false);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    protected boolean ownsChannel() {
+        return true;
+    }
+
+    protected void useReceiveQueue() {
+        receiveQueue = new ArrayBlockingQueue<>(RECEIVE_QUEUE_SIZE);
+    }
+
+    boolean offer(@NotNull ByteBuffer datagram) {
+        if (!receiveQueue.offer(datagram)) return false;
+        // The loop may have drained the queue in onDead already, nothing would give the buffer back then.
+        if (state == ConnectionState.DEAD) {
+            ByteBuffer queued;
+            while ((queued = receiveQueue.poll()) != null) RECEIVE_POOL.release(queued);
+        }
+        wakeup();
+        return true;
+    }
+
+    // Blocks in receive on a blocking channel and hands datagrams to the loop through the receive queue.
+    // Virtual threads unmount while blocked here, whereas Selector.select would hold on to a carrier thread.
+    protected void receiveLoop() {
+        ByteBuffer buffer = null;
+        try {
+            while (state != ConnectionState.DEAD) {
+                if (buffer == null) buffer = RECEIVE_POOL.acquire();
+                var address = channel.receive(buffer.clear());
+                if (!peerAddress.equals(address)) continue;
+                if (offer(buffer.flip())) buffer = null;
+            }
+        } catch (IOException ignored) {
+        }
+        if (buffer != null) RECEIVE_POOL.release(buffer);
+    }
+
+    protected void wakeup() {
+        var loop = eventLoop;
+        if (loop != null) {
+            loop.wakeup(this);
+            return;
+        }
+
+        var selector = loopSelector;
+        if (selector != null) selector.wakeup();
+        var thread = loopThread;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    // Decodes the next datagram into receivedPackets, returns false if there was none. Only a lone data packet
+    // keeps the datagram buffer, the packets of a bundle are decoded from a copy.
+    protected boolean tryRecvPackets() {
+        if (receiveQueue != null) {
+            var datagram = receiveQueue.poll();
+            if (datagram == null) return false;
+            decodePackets(datagram);
+            if (receivedPackets.size() == 1 && receivedPackets.getFirst() instanceof DataPacket data)
+                data.attach(RECEIVE_POOL, datagram);
+            else RECEIVE_POOL.release(datagram);
+            return true;
+        }
+
+        if (receiveBuffer == null) receiveBuffer = RECEIVE_POOL.acquire();
+        receiveBuffer.clear();
         SocketAddress address;
         try {
-            address = channel.receive(buffer);
+            address = channel.receive(receiveBuffer);
         } catch (IOException e) {
             deadReason = e;
             state = ConnectionState.DEAD;
-            return null;
+            return false;
         }
 
-        if (address == null || !address.equals(peerAddress)) return null;
-        buffer.limit(buffer.position());
-        buffer.rewind();
+        if (address == null || !address.equals(peerAddress)) return false;
+        receiveBuffer.flip();
+        decodePackets(receiveBuffer);
+        if (receivedPackets.size() == 1 && receivedPackets.getFirst() instanceof DataPacket data) {
+            data.attach(RECEIVE_POOL, receiveBuffer);
+            receiveBuffer = null;
+        }
+        return true;
+    }
 
-        Packet packet;
+    // A corrupted datagram decodes into nothing.
+    protected void decodePackets(@NotNull ByteBuffer buffer) {
         try {
-            packet = packetDecoder.fromByteBuffer(buffer);
+            packetDecoder.fromByteBuffer(buffer, ackedNum, nextSeqNumber, receivedPackets);
         } catch (CorruptedPacketException e) {
-            return null;
+            receivedPackets.clear();
         } catch (Exception e) {
+            receivedPackets.clear();
             deadReason = e;
             state = ConnectionState.DEAD;
-            return null;
         }
-
-        return packet;
     }
 
     protected void sendPacket(@NotNull Packet packet) {
@@ -132,29 +336,36 @@ public class Connection implements AutoCloseable {
     }
 
     protected void onRecvPacket(@NotNull Packet packet) {
-        timeoutMark = tick;
+        lastReceiveTime = now;
         switch (state) {
-            case TO_SEND_SYN -> {
-            }
+            case TO_SEND_SYN, DEAD -> ignore(packet);
             case WAIT_SYN_ACK -> {
-                if (packet instanceof SynAckPacket) {
+                if (packet instanceof SynAckPacket synAck) {
+                    applyFeatures(synAck.getFeatures() & getLocalFeatures());
+                    peerMaxStreams = Math.max(synAck.getMaxStreams(), 0);
+                    // timerMark only moves away from progressMark when the Syn was resent.
+                    if (timerMark == progressMark) updateRtt(now - timerMark);
                     ackedNum = packet.getSeqNumber();
                     cleanState();
                     state = ConnectionState.READY;
-                }
+                    // Lets the server leave ACKED_SYN without waiting for data.
+                    scheduleAck(true);
+                } else ignore(packet);
             }
             case WAIT_SYN -> {
-                if (packet instanceof SynPacket) {
-                    sendPacket(new SynAckPacket(nextSeqNumber));
+                if (packet instanceof SynPacket syn) {
+                    applyFeatures(syn.getFeatures() & getLocalFeatures());
+                    peerMaxStreams = Math.max(syn.getMaxStreams(), 0);
+                    sendPacket(new SynAckPacket(nextSeqNumber, features, options.getMaxConcurrentStreams()));
                     ackedNum = packet.getSeqNumber();
                     cleanState();
                     state = ConnectionState.ACKED_SYN;
-                }
+                } else ignore(packet);
             }
             case ACKED_SYN -> {
                 if (packet instanceof SynPacket) {
-                    sendPacket(new SynAckPacket(nextSeqNumber));
-                    tickMark = tick;
+                    sendPacket(new SynAckPacket(nextSeqNumber, features, options.getMaxConcurrentStreams()));
+                    timerMark = now;
                 } else {
                     cleanState();
                     state = ConnectionState.READY;
@@ -163,31 +374,21 @@ public class Connection implements AutoCloseable {
             }
             case READY, TO_SEND_FIN, WAIT_FIN_ACK, WAIT_OTHER_FIN -> {
                 switch (packet) {
-                    case DataPacket data -> {
-                        var index = data.getSeqNumber() - ackedNum;
-                        if (index < 0 || index >= MAX_WINDOW_SIZE) break;
-                        receiveWindow.set((int) index, data);
-
-                        while (receiveWindow.getFirst() != null) {
-                            var recv = receiveWindow.removeFirst();
-                            receiveWindow.add(null);
-                            try {
-                                dataReceiveOutputStream.write(recv.getData());
-                            } catch (IOException ignored) {
-                            }
-                            ++ackedNum;
-                        }
+                    case DataAckPacket data -> {
+                        onAck(data.getAckNumber(), data.getWindow(), null);
+                        onData(data);
                     }
-                    case AckPacket ack -> {
-                        var acked = ack.getAckNumber();
-                        boolean flag = false;
-                        while (!sendWindow.isEmpty()) {
-                            var fst = sendWindow.getFirst();
-                            if (fst.getSeqNumber() >= acked) break;
-                            flag = true;
-                            sendWindow.removeFirst();
-                        }
-                        if (state == ConnectionState.READY && flag) tickMark = tick;
+                    case ParityPacket parity -> onParity(parity);
+                    case DataPacket data -> onData(data);
+                    case AckPacket ack -> onAck(ack.getAckNumber(), ack.getWindow(), ack instanceof SackPacket sack ? sack : null);
+                    case StreamWindowPacket window -> {
+                        var stream = streams.get(window.getStreamId());
+                        if (stream != null) stream.onPeerLimit(window.getLimit(), now);
+                    }
+                    case ProbePacket probe -> sendPacket(new ProbeAckPacket(nextSeqNumber, probe.getProbeNumber()));
+                    case ProbeAckPacket ack -> {
+                        if (mtuProber != null && mtuProber.onProbeAcked(ack.getProbeNumber(), now))
+                            segmentSize = mtuProber.getConfirmedSize() - dataOverhead;
                     }
                     case FinPacket _ -> {
                         finalized = true;
@@ -205,95 +406,500 @@ public class Connection implements AutoCloseable {
             }
             case LAST_WAIT -> {
                 if (packet instanceof FinPacket) {
-                    tickMark = tick;
+                    timerMark = now;
                     sendPacket(new FinAckPacket(nextSeqNumber));
+                } else ignore(packet);
+            }
+        }
+    }
+
+    // A data packet may hold a pooled datagram buffer, one that is not processed has to give it back.
+    protected void ignore(@NotNull Packet packet) {
+        if (packet instanceof DataPacket data) data.release();
+    }
+
+    protected void onData(@NotNull DataPacket data) {
+        var index = data.getSeqNumber() - ackedNum;
+        if (index < 0 || index >= MAX_WINDOW_SIZE) {
+            data.release();
+            // A duplicate means an earlier ack was lost.
+            scheduleAck(true);
+            return;
+        }
+        // The parity covers what a packet first carried, the marker of an abandoned message is not that.
+        if (parityRecovery != null && !parityRecovery.has(data.getSeqNumber()))
+            parityRecovery.onData(data, defaultStream == null || !StreamFrame.isAbandoned(data));
+        if (defaultStream != null) {
+            if (receiveWindow.get((int) index) != null) data.release();
+            else if (onStreamFrame(data)) receiveWindow.set((int) index, DISPATCHED);
+        } else {
+            largestReceivedPayload = Math.max(largestReceivedPayload, data.getLength());
+            var old = receiveWindow.set((int) index, data);
+            if (old != null) old.release();
+        }
+        deliverReceived();
+
+        // Out of order, or a probe while the receive pipe is full.
+        if (index > 0 || receiveWindow.getFirst() != null) scheduleAck(true);
+        else scheduleAck(++unackedPackets >= options.getAckFrequency());
+
+        if (parityRecovery != null) {
+            var recovered = parityRecovery.onReceived(data.getSeqNumber(), ackedNum);
+            if (recovered != null) onData(recovered);
+        }
+    }
+
+    // Payloads are only kept for recovery once the peer has shown that it sends parity.
+    protected void onParity(@NotNull ParityPacket parity) {
+        if (parityRecovery == null) parityRecovery = new ParityRecovery();
+        var recovered = parityRecovery.onParity(parity, ackedNum);
+        if (recovered != null) onData(recovered);
+    }
+
+    // Returns false if the stream could not take the frame, the packet then stays unacknowledged.
+    protected boolean onStreamFrame(@NotNull DataPacket data) {
+        StreamFrame frame;
+        try {
+            frame = new StreamFrame(data);
+        } catch (IllegalArgumentException e) {
+            data.release();
+            deadReason = e;
+            state = ConnectionState.DEAD;
+            return false;
+        }
+
+        // Messages are handed over as they arrive. While the application queue is full a message is refused
+        // and stays unacknowledged, so the sender retransmits it once there is room again. A large message
+        // keeps its datagram buffer until the application has copied it out, but only while few are waiting,
+        // the queue is first in first out so no more than MAX_PINNED_MESSAGES buffers are held at a time.
+        if (frame.isMessage()) {
+            if (frame.isAbandoned()) {
+                frame.release();
+                return true;
+            }
+            if (receivedMessages.remainingCapacity() == 0) {
+                frame.release();
+                return false;
+            }
+            if (frame.getData().remaining() <= MESSAGE_COPY_LENGTH || receivedMessages.size() >= MAX_PINNED_MESSAGES)
+                frame = frame.detach();
+            if (receivedMessages.offer(frame)) return true;
+            frame.release();
+            return false;
+        }
+
+        var stream = findStream(frame.getStreamId());
+        if (stream == null) {
+            frame.release();
+            return true;
+        }
+        if (!stream.onFrame(frame)) {
+            frame.release();
+            return false;
+        }
+        stream.deliver();
+        // A frame at or past the advertised limit is a probe from a sender whose window update got lost.
+        updateStreamWindow(stream, frame.getStreamSeq() - stream.advertisedLimit >= 0);
+        if (stream.isFinished()) removeStream(stream);
+        return true;
+    }
+
+    // Frames for streams the peer has not opened before open them, together with any skipped lower ids. A frame
+    // that would take the peer past the announced limit kills the connection before anything is opened.
+    @Nullable
+    protected Stream findStream(int id) {
+        var stream = streams.get(id);
+        if (stream != null) return stream;
+        if (id <= highestPeerStreamId || (id & 1) == (nextStreamId.get() & 1)) return null;
+        long opening = ((long) id - highestPeerStreamId) / 2;
+        if (peerStreams + opening > options.getMaxConcurrentStreams()) {
+            deadReason = new ProtocolException("Peer opened more than " + options.getMaxConcurrentStreams() + " streams");
+            state = ConnectionState.DEAD;
+            return null;
+        }
+        peerStreams += (int) opening;
+        for (int next = highestPeerStreamId + 2; next <= id; next += 2) {
+            var opened = new Stream(this, next);
+            streams.put(next, opened);
+            registerStream(opened);
+            acceptedStreams.offer(opened);
+        }
+        highestPeerStreamId = id;
+        return streams.get(id);
+    }
+
+    protected void registerStream(@NotNull Stream stream) {
+        if (stream.registered) return;
+        stream.registered = true;
+        stream.lastCreditTime = now;
+        activeStreams.add(stream);
+    }
+
+    protected void removeStream(@NotNull Stream stream) {
+        activeStreams.remove(stream);
+        if (!streams.remove(stream.getId(), stream)) return;
+        if (stream.getId() == 0) return;
+        if ((stream.getId() & 1) == (nextStreamId.get() & 1)) localStreams.decrementAndGet();
+        else --peerStreams;
+    }
+
+    void onStreamEvent(@NotNull Stream stream) {
+        streamEvents.offer(stream);
+        wakeup();
+    }
+
+    protected void processStreamEvents() {
+        Stream stream;
+        while ((stream = streamEvents.poll()) != null) {
+            stream.eventQueued = false;
+            if (defaultStream == null) {
+                removeStream(stream);
+                stream.onDead();
+                continue;
+            }
+            if (!streams.containsKey(stream.getId())) continue;
+            registerStream(stream);
+            stream.deliver();
+            updateStreamWindow(stream, false);
+            if (stream.isFinished()) removeStream(stream);
+        }
+    }
+
+    protected void updateStreamWindow(@NotNull Stream stream, boolean force) {
+        if (stream.finReceived) return;
+        long limit = stream.getReceiveLimit();
+        if (!force && limit - stream.advertisedLimit < Stream.WINDOW_UPDATE_STEP) return;
+        if (limit - stream.advertisedLimit > 0) stream.advertisedLimit = limit;
+        sendPacket(new StreamWindowPacket(nextSeqNumber, stream.getId(), stream.advertisedLimit));
+    }
+
+    protected void onAck(long acked, int window, @Nullable SackPacket sack) {
+        if (acked >= peerAckNumber) {
+            peerAckNumber = acked;
+            if (window != AckPacket.UNKNOWN_WINDOW) peerWindow = window;
+        }
+        boolean flag = false;
+        int newlyAcked = 0;
+        while (!sendWindow.isEmpty()) {
+            var fst = sendWindow.getFirst();
+            if (fst.getSeqNumber() >= acked) break;
+            flag = true;
+            if (!fst.isAcked()) {
+                sampleRtt(fst);
+                ++newlyAcked;
+            }
+            sendWindow.removeFirst();
+        }
+        int sacked = sack != null ? onSack(sack) : 0;
+        if (rttSample != Long.MAX_VALUE) {
+            updateRtt(rttSample);
+            rttSample = Long.MAX_VALUE;
+        } else if (flag) resetRetransmitTimeout();
+        // A closed peer window stalls the sender on purpose, it is not a lack of progress.
+        if (flag || peerWindow == 0) progressMark = now;
+        if (flag) consecutiveTimeouts = 0;
+        if (newlyAcked + sacked > 0) congestionController.onPacketsAcked(now, newlyAcked + sacked);
+        if (recovering && acked >= recoveryPoint) recovering = false;
+        if (sacked > 0) detectLosses();
+        updateWindowSize();
+        if (state == ConnectionState.READY && flag) timerMark = now;
+    }
+
+    protected void scheduleAck(boolean immediately) {
+        if (immediately) nextAckTime = now;
+        else if (!ackPending) nextAckTime = now + ACK_DELAY;
+        ackPending = true;
+    }
+
+    protected void deliverReceived() {
+        DataPacket recv;
+        while ((recv = receiveWindow.getFirst()) != null) {
+            if (recv != DISPATCHED) {
+                try {
+                    if (!receivePipe.tryWrite(recv.getPayload())) break;
+                } catch (IOException ignored) {
                 }
+                recv.release();
+            }
+            receiveWindow.removeFirst();
+            receiveWindow.add(null);
+            ++ackedNum;
+        }
+    }
+
+    // Counted in packets of the largest size the peer has sent so far. Streams have their own windows.
+    protected int getReceiveWindow() {
+        if (defaultStream != null) return MAX_WINDOW_SIZE;
+        return Math.min(MAX_WINDOW_SIZE, receivePipe.remainingCapacity() / Math.max(largestReceivedPayload, 1));
+    }
+
+    // With nothing in flight one packet is always allowed, it doubles as the zero window probe.
+    protected int getSendLimit() {
+        return Math.max(Math.min(windowSize, peerWindow), 1);
+    }
+
+    protected boolean hasSendableData() {
+        if (defaultStream != null) {
+            if (!messageQueue.isEmpty()) return true;
+            int maxData = getStreamDataSize();
+            boolean partial = canSendPartial();
+            for (var stream : activeStreams)
+                if (stream.getSendableLength(maxData, partial || isFlushing(stream), now, retransmitTimeout) >= 0) return true;
+            return false;
+        }
+        int available = sendPipe.available();
+        return available >= segmentSize || available > 0 && (canSendPartial() || isFlushing(null));
+    }
+
+    // Nagle: a partial segment waits while data is in flight, unless no delay is set. A cork holds partial
+    // segments back regardless, flush and disconnect release everything written before them.
+    protected boolean canSendPartial() {
+        return finalized || !corked && (noDelay || sendWindow.isEmpty());
+    }
+
+    // Whether data written to the stream before its last flush still waits to be sent. The connection's own
+    // writes, on the default stream or without streams, are counted by the connection.
+    protected boolean isFlushing(@Nullable Stream stream) {
+        if (stream == null || stream == defaultStream) return bytesPacketized - flushMark < 0;
+        return stream.isFlushing();
+    }
+
+    protected boolean hasPendingData() {
+        if (sendPipe.available() > 0 || !messageQueue.isEmpty()) return true;
+        if (defaultStream != null)
+            for (var stream : activeStreams)
+                if (stream.hasPendingData()) return true;
+        return false;
+    }
+
+    protected int getStreamDataSize() {
+        return Math.max(segmentSize - StreamFrame.HEADER_LENGTH, 1);
+    }
+
+    // Messages go before stream data, those that expired while queued are dropped unsent.
+    @Nullable
+    protected OutgoingPacket nextPacket() throws IOException {
+        PendingMessage message;
+        while ((message = messageQueue.poll()) != null) {
+            if (message.isExpired(now)) continue;
+            return new OutgoingPacket(DataPacket.wrap(nextSeqNumber++, message.frame, message.headroom), message.policy, message.queuedTime);
+        }
+
+        byte[] data = nextPayload();
+        return data == null ? null : new OutgoingPacket(DataPacket.wrap(nextSeqNumber++, data));
+    }
+
+    // Streams take turns, one packet each.
+    @Nullable
+    protected byte[] nextPayload() throws IOException {
+        if (defaultStream == null) {
+            if (!hasSendableData()) return null;
+            byte[] data = new byte[Math.min(sendPipe.available(), segmentSize)];
+            bytesPacketized += sendPipe.read(data, 0, data.length);
+            return data;
+        }
+
+        int maxData = getStreamDataSize();
+        boolean partial = canSendPartial();
+        for (int i = 0; i < activeStreams.size(); ++i) {
+            int index = (streamCursor + i) % activeStreams.size();
+            var stream = activeStreams.get(index);
+            int length = stream.getSendableLength(maxData, partial || isFlushing(stream), now, retransmitTimeout);
+            if (length < 0) continue;
+            streamCursor = index + 1;
+            if (stream == defaultStream) bytesPacketized += length;
+            var payload = stream.nextPayload(length);
+            if (stream.isFinished()) removeStream(stream);
+            return payload;
+        }
+        return null;
+    }
+
+    protected int onSack(@NotNull SackPacket sack) {
+        if (sendWindow.isEmpty()) return 0;
+        long base = sendWindow.getFirst().getSeqNumber();
+        int newlyAcked = 0;
+        for (int i = 0; i < sack.getBlockCount(); ++i) {
+            long start = Math.max(sack.getBlockStart(i), base);
+            long end = Math.min(sack.getBlockEnd(i), base + sendWindow.size());
+            for (long seq = start; seq < end; ++seq) {
+                var packet = sendWindow.get((int) (seq - base));
+                if (packet.isAcked()) continue;
+                sampleRtt(packet);
+                packet.onAcked();
+                ++newlyAcked;
+            }
+        }
+
+        // Losses the parity recovers are never retransmitted, so they are counted when a hole shows up.
+        if (parityGroup != null && sack.getBlockCount() > 0) {
+            long end = Math.min(sack.getBlockEnd(sack.getBlockCount() - 1), base + sendWindow.size());
+            for (long seq = base; seq < end; ++seq) {
+                var packet = sendWindow.get((int) (seq - base));
+                if (!packet.isAcked()) countLoss(packet);
             }
         }
+        return newlyAcked;
+    }
+
+    protected void countLoss(@NotNull OutgoingPacket packet) {
+        if (packet.markLost()) ++lostPackets;
+    }
+
+    // A hole is considered lost once enough packets above it have been selectively acknowledged.
+    // Each hole is retransmitted at most once per recovery episode, the RTO covers lost retransmissions.
+    protected void detectLosses() {
+        int threshold = options.getDuplicateAckThreshold();
+        if (threshold == 0) return;
+
+        int sackedAbove = 0;
+        for (var packet : sendWindow)
+            if (packet.isAcked()) ++sackedAbove;
+        for (var packet : sendWindow) {
+            if (sackedAbove < threshold) break;
+            if (packet.isAcked()) {
+                --sackedAbove;
+                continue;
+            }
+            if (!recovering) {
+                recovering = true;
+                recoveryStart = now;
+                recoveryPoint = nextSeqNumber;
+                congestionController.onLoss(now);
+            } else if (packet.getSentTime() - recoveryStart >= 0) continue;
+            sendData(packet);
+        }
     }
 
     protected void cleanState() {
-        tickMark = tick;
-        waitRecord = 0;
+        timerMark = now;
+        progressMark = now;
+        resetRetransmitTimeout();
+    }
+
+    protected boolean isRetransmitDue() {
+        return now - timerMark > retransmitTimeout;
+    }
+
+    // Returns false once no progress has been made for CONNECTION_TIMEOUT, the connection is then dead.
+    protected boolean backOff() {
+        if (now - progressMark > CONNECTION_TIMEOUT) {
+            deadReason = new IOException("Connection timed out");
+            state = ConnectionState.DEAD;
+            return false;
+        }
+        timerMark = now;
+        retransmitTimeout = Math.min(retransmitTimeout * 2, MAX_RTO);
+        return true;
+    }
+
+    // Karn's rule: retransmitted packets are ambiguous and never sampled.
+    protected void sampleRtt(@NotNull OutgoingPacket packet) {
+        if (packet.getTransmissions() == 1) rttSample = Math.min(rttSample, now - packet.getSentTime());
+    }
+
+    protected void updateRtt(long sample) {
+        if (smoothedRtt == 0) {
+            smoothedRtt = sample;
+            rttVariance = sample / 2;
+        } else {
+            rttVariance = (rttVariance * 3 + Math.abs(smoothedRtt - sample)) / 4;
+            smoothedRtt = (smoothedRtt * 7 + sample) / 8;
+        }
+        resetRetransmitTimeout();
+        congestionController.onRttSample(now, sample);
+    }
+
+    protected void updateWindowSize() {
+        windowSize = Math.clamp(congestionController.getWindow(), 1, MAX_WINDOW_SIZE);
+    }
+
+    protected void resetRetransmitTimeout() {
+        if (smoothedRtt == 0) retransmitTimeout = INITIAL_RTO;
+        else retransmitTimeout = Math.clamp(smoothedRtt + Math.max(ACK_DELAY, rttVariance * 4), MIN_RTO, MAX_RTO);
     }
 
     protected void onTick() {
-        if (tick - timeoutMark > TIMEOUT_TICK) {
+        deliverReceived();
+        if (featuresApplied) processStreamEvents();
+        if (now - lastReceiveTime > CONNECTION_TIMEOUT) {
             deadReason = new IOException("Connection timed out");
             state = ConnectionState.DEAD;
         }
 
         switch (state) {
             case TO_SEND_SYN -> {
-                sendPacket(new SynPacket(nextSeqNumber));
+                sendPacket(new SynPacket(nextSeqNumber, getLocalFeatures(), options.getMaxConcurrentStreams()));
                 cleanState();
                 state = ConnectionState.WAIT_SYN_ACK;
             }
             case WAIT_SYN_ACK -> {
-                if (tick - tickMark > RESEND_TICK) {
-                    if (waitRecord < RESEND_LIMIT) {
-                        tickMark = tick;
-                        ++waitRecord;
-                        sendPacket(new SynPacket(nextSeqNumber));
-                    } else {
-                        deadReason = new IOException("Connection timed out");
-                        state = ConnectionState.DEAD;
-                    }
+                if (isRetransmitDue() && backOff()) {
+                    sendPacket(new SynPacket(nextSeqNumber, getLocalFeatures(), options.getMaxConcurrentStreams()));
                 }
             }
             case WAIT_SYN -> {
-                if (tick - tickMark > TIMEOUT_TICK) {
+                if (now - timerMark > CONNECTION_TIMEOUT) {
                     deadReason = new IOException("Connection timed out");
                     state = ConnectionState.DEAD;
                 }
             }
             case ACKED_SYN -> {
-                if (tick - tickMark > IDLE_WAIT_TICK) {
+                if (now - timerMark > IDLE_WAIT) {
                     cleanState();
                     state = ConnectionState.READY;
                 }
             }
             case READY -> {
-                try {
-                    if (finalized && dataSendInputStream.available() == 0 && sendWindow.isEmpty()) {
-                        cleanState();
-                        state = ConnectionState.TO_SEND_FIN;
-                        break;
+                if (finalized && !hasPendingData() && sendWindow.isEmpty()) {
+                    cleanState();
+                    state = ConnectionState.TO_SEND_FIN;
+                    break;
+                }
+
+                if (mtuProber != null) {
+                    int refused = refusedDatagramSize;
+                    if (refused != 0) {
+                        refusedDatagramSize = 0;
+                        onPathMtuShrunk(refused);
                     }
-                } catch (IOException ignored) {
+                    probePathMtu();
                 }
 
                 boolean flag = false;
                 try {
-                    while (sendWindow.size() < windowSize && dataSendInputStream.available() > 0) {
+                    OutgoingPacket packet;
+                    while (sendWindow.size() < getSendLimit() && now - nextSendTime >= 0 && (packet = nextPacket()) != null) {
                         flag = true;
-                        byte[] data = new byte[Math.min(dataSendInputStream.available(), DATA_PACKET_SIZE)];
-                        int read = dataSendInputStream.read(data);
-                        var packet = new DataPacket(nextSeqNumber++, data, read);
                         sendWindow.add(packet);
-                        sendPacket(packet);
+                        sendData(packet);
+                        if (parityGroup != null) addToParityGroup(packet.getPacket());
                     }
                 } catch (IOException ignored) {
                 }
-                if (flag) tickMark = tick;
+                if (flag) timerMark = now;
+                // A partial group goes out once the sender runs dry, losses at the tail are otherwise
+                // only recovered by the retransmission timeout.
+                if (parityGroup != null && parityGroup.size() > 0 && !hasSendableData()) sendParity();
 
                 if (sendWindow.isEmpty()) {
-                    tickMark = tick;
-                    waitRecord = 0;
-                } else {
-                    if (tick - tickMark > RESEND_TICK) {
-                        if (waitRecord < RESEND_LIMIT) {
-                            tickMark = tick;
-                            ++waitRecord;
-                            for (var packet : sendWindow) sendPacket(packet);
-                        } else {
-                            deadReason = new IOException("Connection timed out");
-                            state = ConnectionState.DEAD;
-                        }
+                    timerMark = now;
+                    progressMark = now;
+                } else if (isRetransmitDue() && backOff()) {
+                    recovering = false;
+                    if (peerWindow > 0) {
+                        congestionController.onTimeout(now);
+                        updateWindowSize();
+                    }
+                    if (++consecutiveTimeouts >= BLACK_HOLE_TIMEOUTS && isBlackHoled()) {
+                        consecutiveTimeouts = 0;
+                        onPathMtuShrunk(mtuProber.getConfirmedSize());
                     }
+                    for (var packet : sendWindow)
+                        if (!packet.isAcked()) sendData(packet);
                 }
 
-                sendPacket(new AckPacket(nextSeqNumber, ackedNum));
+                sendAckIfDue();
             }
             case TO_SEND_FIN -> {
                 sendPacket(new FinPacket(nextSeqNumber));
@@ -302,26 +908,19 @@ public class Connection implements AutoCloseable {
                 state = ConnectionState.WAIT_FIN_ACK;
             }
             case WAIT_FIN_ACK -> {
-                if (!otherFinalized) sendPacket(new AckPacket(nextSeqNumber, ackedNum));
-                if (tick - tickMark > RESEND_TICK) {
-                    if (waitRecord < RESEND_LIMIT) {
-                        tickMark = tick;
-                        ++waitRecord;
-                        sendPacket(new FinPacket(nextSeqNumber));
-                    } else {
-                        deadReason = new IOException("Connection timed out");
-                        state = ConnectionState.DEAD;
-                    }
+                if (!otherFinalized) sendAckIfDue();
+                if (isRetransmitDue() && backOff()) {
+                    sendPacket(new FinPacket(nextSeqNumber));
                 }
             }
             case WAIT_OTHER_FIN -> {
                 if (otherFinalized) {
                     cleanState();
                     state = ConnectionState.LAST_WAIT;
-                } else sendPacket(new AckPacket(nextSeqNumber, ackedNum));
+                } else sendAckIfDue();
             }
             case LAST_WAIT -> {
-                if (tick - tickMark > IDLE_WAIT_TICK)
+                if (now - timerMark > IDLE_WAIT)
                     state = ConnectionState.DEAD;
             }
             case DEAD -> {
@@ -330,51 +929,423 @@ public class Connection implements AutoCloseable {
         }
     }
 
-    @SuppressWarnings("BusyWait")
+    // A delayed ack rides on outgoing data. Immediate acks may carry SACK blocks and are sent on their own.
+    protected void sendData(@NotNull OutgoingPacket packet) {
+        if (packet.getTransmissions() > 0 && packet.shouldAbandon(now)) {
+            byte[] marker = new byte[StreamFrame.HEADER_LENGTH];
+            StreamFrame.writeHeader(marker, 0, 0, (byte) (StreamFrame.FLAG_MESSAGE | StreamFrame.FLAG_ABANDONED));
+            packet.abandon(DataPacket.wrap(packet.getSeqNumber(), marker));
+        }
+        if (packet.getTransmissions() > 0) countLoss(packet);
+        packet.onSent(now);
+        onPacedSend(packet.getPacket().getLength());
+        if (ackPending && now - nextAckTime < 0 && (features & Features.DATA_ACK) != 0) {
+            int window = getReceiveWindow();
+            advertisedWindow = window;
+            sendPacket(new DataAckPacket(packet.getPacket(), ackedNum, window));
+            onAckSent();
+        } else sendPacket(packet.getPacket());
+    }
+
+    protected void addToParityGroup(@NotNull DataPacket packet) {
+        parityGroup.add(packet);
+        if (++sampledPackets == LOSS_SAMPLE_SIZE) {
+            lossRate = lossRate * 0.75 + Math.min(1.0, (double) lostPackets / LOSS_SAMPLE_SIZE) * 0.25;
+            sampledPackets = 0;
+            lostPackets = 0;
+        }
+        if (parityGroup.size() >= getParityGroupSize()) sendParity();
+    }
+
+    protected void sendParity() {
+        var parity = parityGroup.finish();
+        onPacedSend(parity.getLength());
+        sendPacket(parity);
+    }
+
+    // A single parity packet recovers a group with one loss, so groups are sized for about one loss in two.
+    protected int getParityGroupSize() {
+        int size = options.getParityGroupSize();
+        if (!options.isAdaptiveParity()) return size;
+        if (lossRate <= 0) return ParityGroup.MAX_SIZE;
+        return (int) Math.min(ParityGroup.MAX_SIZE, Math.max(size, 0.5 / lossRate));
+    }
+
+    // Full-size segments keep timing out although the path took datagrams of their size before.
+    protected boolean isBlackHoled() {
+        if (mtuProber == null || mtuProber.getConfirmedSize() <= PathMtuProber.BASE_DATAGRAM_SIZE) return false;
+        for (var packet : sendWindow)
+            if (!packet.isAcked()) return packet.getPacket().getLength() + dataOverhead > PathMtuProber.BASE_DATAGRAM_SIZE;
+        return false;
+    }
+
+    // Datagrams of the given size no longer cross the path. New data is cut for the base size again while
+    // the search restarts below the failed size, segments already cut larger go out fragmented.
+    protected void onPathMtuShrunk(int size) {
+        mtuProber.onShrunk(size, now);
+        segmentSize = mtuProber.getConfirmedSize() - dataOverhead;
+    }
+
+    protected void probePathMtu() {
+        int size = mtuProber.poll(now, retransmitTimeout);
+        if (size == 0) return;
+        var probe = new ProbePacket(nextSeqNumber, mtuProber.getProbeNumber(), 0);
+        sendPacket(new ProbePacket(nextSeqNumber, mtuProber.getProbeNumber(), size - packetEncoder.getEncodedLength(probe)));
+    }
+
+    // With nothing to acknowledge the ack timer doubles as the keepalive.
+    protected void sendAckIfDue() {
+        if (windowUpdateRequested) {
+            windowUpdateRequested = false;
+            scheduleAck(true);
+        }
+        if (now - nextAckTime < 0) return;
+        sendPacket(createAck());
+        onAckSent();
+    }
+
+    // Up to PACING_BURST of unused time carries over, so a sender coming out of idle may send a short
+    // burst but is never slowed below the rate.
+    protected void onPacedSend(int bytes) {
+        double rate = getPacingRate();
+        if (rate <= 0) return;
+        nextSendTime = Math.max(nextSendTime, now - PACING_BURST) + (long) (bytes * 1e9 / rate);
+    }
+
+    // Bytes per second, 0 when unpaced.
+    protected double getPacingRate() {
+        double rate = options.isPacing() ? congestionController.getPacingRate(smoothedRtt) * segmentSize : 0;
+        long limit = options.getMaxBandwidth();
+        if (limit > 0) rate = rate > 0 ? Math.min(rate, limit) : limit;
+        return rate;
+    }
+
+    protected void onAckSent() {
+        ackPending = false;
+        unackedPackets = 0;
+        nextAckTime = now + KEEPALIVE_INTERVAL;
+    }
+
+    @NotNull
+    protected AckPacket createAck() {
+        int window = getReceiveWindow();
+        advertisedWindow = window;
+        if ((features & Features.SACK) == 0) return new AckPacket(nextSeqNumber, ackedNum, window);
+
+        int count = 0;
+        for (int i = 1; i < receiveWindow.size() && count < SackPacket.MAX_BLOCKS; ++i) {
+            if (receiveWindow.get(i) == null) continue;
+            int start = i;
+            while (i < receiveWindow.size() && receiveWindow.get(i) != null) ++i;
+            sackBlocks[count * 2] = start;
+            sackBlocks[count * 2 + 1] = i;
+            ++count;
+        }
+        if (count == 0) return new AckPacket(nextSeqNumber, ackedNum, window);
+        return new SackPacket(nextSeqNumber, ackedNum, window, sackBlocks, count);
+    }
+
+    protected long nextDeadline() {
+        long deadline = lastReceiveTime + CONNECTION_TIMEOUT;
+        switch (state) {
+            case TO_SEND_SYN, TO_SEND_FIN -> deadline = now;
+            case WAIT_SYN_ACK -> deadline = Math.min(deadline, timerMark + retransmitTimeout);
+            case WAIT_SYN -> deadline = Math.min(deadline, timerMark + CONNECTION_TIMEOUT);
+            case ACKED_SYN, LAST_WAIT -> deadline = Math.min(deadline, timerMark + IDLE_WAIT);
+            case READY -> {
+                if (finalized && !hasPendingData() && sendWindow.isEmpty()) return now;
+                if (sendWindow.size() < getSendLimit() && hasSendableData()) {
+                    if (now - nextSendTime >= 0) return now;
+                    deadline = Math.min(deadline, nextSendTime);
+                }
+                if (!sendWindow.isEmpty()) deadline = Math.min(deadline, timerMark + retransmitTimeout);
+                deadline = Math.min(deadline, nextAckTime);
+                if (mtuProber != null) deadline = Math.min(deadline, mtuProber.getNextEvent());
+                for (var stream : activeStreams)
+                    if (stream.isCreditBlocked()) deadline = Math.min(deadline, stream.getProbeTime(retransmitTimeout));
+            }
+            case WAIT_FIN_ACK -> {
+                deadline = Math.min(deadline, timerMark + retransmitTimeout);
+                if (!otherFinalized) deadline = Math.min(deadline, nextAckTime);
+            }
+            case WAIT_OTHER_FIN -> {
+                if (otherFinalized) return now;
+                deadline = Math.min(deadline, nextAckTime);
+            }
+            case DEAD -> deadline = Long.MAX_VALUE;
+        }
+        return deadline;
+    }
+
+    protected int getLocalFeatures() {
+        return packetEncoder.getSupportedFeatures() & packetDecoder.getSupportedFeatures() | Features.STREAMS | Features.PARITY;
+    }
+
+    protected void applyFeatures(int features) {
+        this.features = features;
+        packetEncoder = packetEncoder.negotiate(features);
+        packetDecoder = packetDecoder.negotiate(features);
+        configureSegmentSize();
+        if ((features & Features.STREAMS) != 0) {
+            var stream = new Stream(this, 0, sendPipe, receivePipe);
+            streams.put(0, stream);
+            registerStream(stream);
+            defaultStream = stream;
+        }
+        // Until the first losses are measured the configured group size is assumed to be needed.
+        if ((features & Features.PARITY) != 0 && options.getParityGroupSize() > 0) {
+            parityGroup = new ParityGroup();
+            lossRate = 0.5 / options.getParityGroupSize();
+        }
+        featuresApplied = true;
+    }
+
+    // Data packets start at the base size and grow as probes confirm larger datagrams.
+    protected void configureSegmentSize() {
+        // The window is the largest one advertised, compact encodings may spend more bytes on larger values.
+        dataOverhead = packetEncoder.getEncodedLength(new DataAckPacket(new DataPacket(0, new byte[0]), 0, MAX_WINDOW_SIZE));
+        bundleOverhead = packetEncoder.getEncodedLength(List.of());
+        int maxDatagramSize = options.getMaxSegmentSize() + dataOverhead;
+        if (dontFragment && (features & Features.PMTUD) != 0) {
+            mtuProber = new PathMtuProber(maxDatagramSize, now);
+            segmentSize = mtuProber.getConfirmedSize() - dataOverhead;
+        } else {
+            mtuProber = null;
+            segmentSize = options.getMaxSegmentSize();
+            // Without probing nothing needs the bit, a shared channel keeps it for the other connections.
+            if (dontFragment && ownsChannel()) dontFragment = !disableDontFragment(channel);
+        }
+    }
+
+    @NotNull
+    protected ByteBuffer encodePacket(@NotNull Packet packet) {
+        if (packet instanceof DataPacket data) {
+            // A payload queued with room in front gets its header written there on every send, an acknowledging
+            // packet needs more of it than a plain one.
+            var buffer = data.getHeadroomBuffer();
+            int offset = buffer == null ? -1 : packetEncoder.getPayloadOffset(data);
+            if (offset >= 0 && offset <= data.getHeadroom()) {
+                int start = data.getHeadroom() - offset;
+                buffer.clear().position(start);
+                packetEncoder.encode(data, buffer);
+                return buffer.flip().position(start);
+            }
+
+            var encoded = data.getEncoded();
+            if (encoded == null) {
+                encoded = packetEncoder.toByteBuffer(data);
+                data.setEncoded(encoded);
+            }
+            return encoded.duplicate();
+        }
+
+        if (sendBuffer == null) sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        sendBuffer.clear();
+        packetEncoder.encode(packet, sendBuffer);
+        return sendBuffer.flip();
+    }
+
+    @NotNull
+    protected ByteBuffer encodePackets(@NotNull List<Packet> packets) {
+        if (sendBuffer == null) sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        sendBuffer.clear();
+        packetEncoder.encode(packets, sendBuffer);
+        return sendBuffer.flip();
+    }
+
+    protected boolean sendNow(@NotNull Packet packet) {
+        return send(packet, encodePacket(packet));
+    }
+
+    protected boolean sendNow(@NotNull List<Packet> packets) {
+        return send(packets.getFirst(), encodePackets(packets));
+    }
+
+    // The don't fragment bit only has to hold for probes. Any other datagram larger than the current path MTU
+    // was cut before the path shrank, and a refused one most likely failed with EMSGSIZE for the same reason,
+    // both go out fragmented. The loop thread lowers the segment size for a refused one.
+    private boolean send(@NotNull Packet packet, @NotNull ByteBuffer datagram) {
+        datagram = packetEncoder.beforeSend(packet, datagram);
+        int length = datagram.remaining();
+        boolean probe = packet instanceof ProbePacket;
+        int sent;
+        try {
+            if (probe) sent = sendProbe(datagram);
+            else if (dontFragment && length > segmentSize + dataOverhead) sent = sendFragmented(datagram);
+            else sent = channel.send(datagram, peerAddress);
+        } catch (IOException e) {
+            // A probe larger than the known path MTU is refused locally, that is just a failed probe.
+            if (probe) return true;
+            if (!dontFragment || length <= PathMtuProber.BASE_DATAGRAM_SIZE) {
+                deadReason = e;
+                state = ConnectionState.DEAD;
+                return true;
+            }
+            refusedDatagramSize = length;
+            wakeup();
+            try {
+                sent = sendFragmented(datagram);
+            } catch (IOException fragmentedError) {
+                deadReason = fragmentedError;
+                state = ConnectionState.DEAD;
+                return true;
+            }
+        }
+        return sent != 0;
+    }
+
+    private int sendProbe(@NotNull ByteBuffer datagram) throws IOException {
+        DONT_FRAGMENT_LOCK.lock();
+        try {
+            return channel.send(datagram, peerAddress);
+        } finally {
+            DONT_FRAGMENT_LOCK.unlock();
+        }
+    }
+
+    // A listener's connections share the channel, so its probes wait while the bit is cleared.
+    private int sendFragmented(@NotNull ByteBuffer datagram) throws IOException {
+        DONT_FRAGMENT_LOCK.lock();
+        try {
+            channel.setOption(ExtendedSocketOptions.IP_DONTFRAGMENT, false);
+            try {
+                return channel.send(datagram, peerAddress);
+            } finally {
+                channel.setOption(ExtendedSocketOptions.IP_DONTFRAGMENT, true);
+            }
+        } finally {
+            DONT_FRAGMENT_LOCK.unlock();
+        }
+    }
+
+    // Packets queued behind the first one join it in a single datagram while they fit into a full segment.
+    // Probes must go out alone, their size is what is being tested. With parity groups data packets go out
+    // alone as well, losing several members of a group together would leave nothing to recover them with.
+    // Returns null if nothing joins the first packet.
+    @Nullable
+    protected List<Packet> bundle(@NotNull Packet first) {
+        if (!featuresApplied || (features & Features.BUNDLE) == 0 || !isBundleable(first)) return null;
+        int room = segmentSize + dataOverhead - bundleOverhead - packetEncoder.getBundledLength(first);
+        List<Packet> packets = null;
+        Packet next;
+        while ((next = sendQueue.peek()) != null && isBundleable(next)) {
+            int length = packetEncoder.getBundledLength(next);
+            if (length > room) break;
+            sendQueue.poll();
+            if (packets == null) {
+                packets = new ArrayList<>();
+                packets.add(first);
+            }
+            packets.add(next);
+            room -= length;
+        }
+        return packets;
+    }
+
+    protected boolean isBundleable(@NotNull Packet packet) {
+        if (packet instanceof DataPacket) return parityGroup == null;
+        return !(packet instanceof ProbePacket);
+    }
+
+    // Sends the packet along with those bundled behind it. If the channel takes nothing they all go back
+    // to the front of the queue.
+    protected boolean sendNext(@NotNull Packet first) {
+        var packets = bundle(first);
+        if (packets == null) {
+            if (sendNow(first)) return true;
+            sendQueue.addFirst(first);
+            return false;
+        }
+        if (sendNow(packets)) return true;
+        for (int i = packets.size() - 1; i >= 0; --i) sendQueue.addFirst(packets.get(i));
+        return false;
+    }
+
+    protected boolean flushSendQueue() {
+        Packet packet;
+        while ((packet = sendQueue.poll()) != null)
+            if (!sendNext(packet)) return false;
+        return true;
+    }
+
+    protected boolean receivePackets(int limit) {
+        now = System.nanoTime();
+        for (int i = 0; i < limit; ++i) {
+            if (state == ConnectionState.DEAD) return false;
+            if (!tryRecvPackets()) return false;
+            for (var packet : receivedPackets) onRecvPacket(packet);
+            receivedPackets.clear();
+        }
+        return true;
+    }
+
+    protected void update() {
+        now = System.nanoTime();
+        onTick();
+    }
+
     protected void sendLoop() {
         while (state != ConnectionState.DEAD) {
             Packet packet;
             try {
-                packet = finalized ? sendQueue.poll(25, TimeUnit.MILLISECONDS) : sendQueue.take();
+                packet = sendQueue.poll(SEND_POLL_TIMEOUT, TimeUnit.NANOSECONDS);
             } catch (InterruptedException e) {
                 continue;
             }
             if (packet == null) continue;
 
-            int sent;
-            try {
-                sent = channel.send(packetEncoder.toByteBuffer(packet), peerAddress);
-            } catch (IOException e) {
-                deadReason = e;
-                state = ConnectionState.DEAD;
-                break;
-            }
-
-            if (sent == 0) {
-                sendQueue.addFirst(packet);
-                try {
-                    Thread.sleep(25);
-                } catch (InterruptedException ignored) {
-                }
-            }
+            if (!sendNext(packet)) LockSupport.parkNanos(SEND_RETRY_DELAY);
         }
     }
 
     protected void loop() {
-        while (state != ConnectionState.DEAD) {
-            Packet packet = tryRecvPacket();
-            if (packet != null) {
-                onRecvPacket(packet);
-                continue;
+        loopThread = Thread.currentThread();
+        try (var selector = ownsChannel() && receiveQueue == null ? Selector.open() : null) {
+            if (selector != null) {
+                channel.register(selector, SelectionKey.OP_READ);
+                loopSelector = selector;
             }
 
-            onTick();
-            ++tick;
-            try {
-                //noinspection BusyWait
-                Thread.sleep(TICK_LENGTH);
-            } catch (InterruptedException ignored) {
+            while (state != ConnectionState.DEAD) {
+                receivePackets(RECEIVE_BATCH);
+                update();
+                if (state == ConnectionState.DEAD) break;
+
+                long wait = nextDeadline() - System.nanoTime();
+                if (wait <= 0) continue;
+                if (selector == null || wait < TimeUnit.MILLISECONDS.toNanos(1)) {
+                    LockSupport.parkNanos(wait);
+                } else {
+                    selector.select(TimeUnit.NANOSECONDS.toMillis(wait));
+                    selector.selectedKeys().clear();
+                }
             }
+        } catch (IOException | RuntimeException e) {
+            deadReason = e;
+            state = ConnectionState.DEAD;
+        }
+        loopSelector = null;
+        loopThread = null;
+        onDead();
+    }
+
+    protected void onDead() {
+        receivePipe.close();
+        sendPipe.close();
+        for (int i = 0; i < receiveWindow.size(); ++i) {
+            var data = receiveWindow.set(i, null);
+            if (data != null) data.release();
+        }
+        if (receiveBuffer != null) {
+            RECEIVE_POOL.release(receiveBuffer);
+            receiveBuffer = null;
+        }
+        for (var stream : streams.values()) stream.onDead();
+        releaseMessages();
+        if (parityRecovery != null) parityRecovery.clear();
+        if (receiveQueue != null) {
+            ByteBuffer datagram;
+            while ((datagram = receiveQueue.poll()) != null) RECEIVE_POOL.release(datagram);
         }
     }
 
@@ -383,7 +1354,22 @@ public class Connection implements AutoCloseable {
     }
 
     public int read(byte[] buf, int len) throws IOException {
-        return dataReceiveInputStream.read(buf, 0, len);
+        int read;
+        readLock.lock();
+        try {
+            read = receivePipe.read(buf, 0, len);
+        } finally {
+            readLock.unlock();
+        }
+
+        // Tell the peer as soon as a mostly closed window has opened up again.
+        var stream = defaultStream;
+        if (stream != null) stream.onRead();
+        else if (advertisedWindow < WINDOW_UPDATE_THRESHOLD && !windowUpdateRequested && getReceiveWindow() >= WINDOW_UPDATE_THRESHOLD) {
+            windowUpdateRequested = true;
+            wakeup();
+        }
+        return read;
     }
 
     public void write(byte[] data) throws IOException {
@@ -392,11 +1378,212 @@ public class Connection implements AutoCloseable {
 
     public void write(byte[] data, int len) throws IOException {
         if (finalized) throw new IOException("Connection finalized");
-        dataSendOutputStream.write(data, 0, len);
+        writeLock.lock();
+        try {
+            for (int offset = 0; offset < len; offset += WRITE_CHUNK_SIZE) {
+                int length = Math.min(WRITE_CHUNK_SIZE, len - offset);
+                sendPipe.write(data, offset, length);
+                bytesWritten += length;
+                wakeup();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Holds back partial segments until uncork or flush, so that several small writes share packets.
+    public void cork() {
+        corked = true;
+    }
+
+    public void uncork() {
+        corked = false;
+        wakeup();
+    }
+
+    public boolean isCorked() {
+        return corked;
+    }
+
+    // Sends everything written so far to any stream without waiting for full segments. Does not wait for
+    // acknowledgement.
+    public void flush() {
+        flushMark = bytesWritten;
+        for (var stream : streams.values()) stream.flushMark = stream.bytesWritten;
+        wakeup();
+    }
+
+    public boolean isNoDelay() {
+        return noDelay;
+    }
+
+    public void setNoDelay(boolean noDelay) {
+        this.noDelay = noDelay;
+        wakeup();
+    }
+
+    // Streams need the peer to support them, opening one before the handshake has finished is allowed.
+    @NotNull
+    public Stream openStream() throws IOException {
+        if (isDead()) throw new IOException("Connection dead", deadReason);
+        if (finalized) throw new IOException("Connection finalized");
+        if (featuresApplied && defaultStream == null) throw new IOException("Peer does not support streams");
+        if (localStreams.incrementAndGet() > peerMaxStreams) {
+            localStreams.decrementAndGet();
+            throw new IOException("Too many open streams, the peer allows " + peerMaxStreams);
+        }
+        var stream = new Stream(this, nextStreamId.getAndAdd(2));
+        streams.put(stream.getId(), stream);
+        onStreamEvent(stream);
+        return stream;
+    }
+
+    @NotNull
+    public Stream acceptStream() throws IOException {
+        while (true) {
+            Stream stream;
+            try {
+                stream = acceptStream(STREAM_ACCEPT_POLL, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            if (stream != null) return stream;
+        }
+    }
+
+    @Nullable
+    public Stream acceptStream(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        var stream = acceptedStreams.poll();
+        if (stream != null) return stream;
+        if (isDead()) throw new IOException("Connection dead", deadReason);
+        return acceptedStreams.poll(timeout, unit);
+    }
+
+    public void sendMessage(byte[] data) throws IOException {
+        sendMessage(data, MessagePolicy.RELIABLE);
+    }
+
+    public void sendMessage(byte[] data, @NotNull MessagePolicy policy) throws IOException {
+        sendMessage(new ByteBuffer[]{ByteBuffer.wrap(data)}, policy);
+    }
+
+    public void sendMessage(@NotNull ByteBuffer data) throws IOException {
+        sendMessage(new ByteBuffer[]{data}, MessagePolicy.RELIABLE);
+    }
+
+    public void sendMessage(@NotNull ByteBuffer data, @NotNull MessagePolicy policy) throws IOException {
+        sendMessage(new ByteBuffer[]{data}, policy);
+    }
+
+    public void sendMessage(@NotNull ByteBuffer[] data) throws IOException {
+        sendMessage(data, MessagePolicy.RELIABLE);
+    }
+
+    // Messages travel next to the streams and arrive unordered, each in one packet of at most
+    // getMaxMessageSize() bytes. They need the handshake to have finished and the peer to support streams.
+    // The remaining bytes of all buffers form one message, they are gathered straight into the frame
+    // that later goes out as the packet payload, and the buffers are left consumed. The frame leaves room
+    // for the packet header in front so that the encoder does not copy it again.
+    public void sendMessage(@NotNull ByteBuffer[] data, @NotNull MessagePolicy policy) throws IOException {
+        if (isDead()) throw new IOException("Connection dead", deadReason);
+        if (finalized) throw new IOException("Connection finalized");
+        if (!featuresApplied) throw new IOException("Connection not established");
+        if (defaultStream == null) throw new IOException("Peer does not support messages");
+        long length = 0;
+        for (var buffer : data) length += buffer.remaining();
+        if (length > getMaxMessageSize())
+            throw new IllegalArgumentException("Message too large: " + length + " > " + getMaxMessageSize());
+
+        int headroom = dataOverhead;
+        var frame = StreamFrame.newMessage(headroom, (int) length);
+        for (var buffer : data) frame.put(buffer);
+        try {
+            messageQueue.put(new PendingMessage(frame.rewind(), headroom, policy, System.nanoTime()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        wakeup();
+    }
+
+    // Path MTU discovery only ever raises this.
+    public int getMaxMessageSize() {
+        return getStreamDataSize();
+    }
+
+    @NotNull
+    public byte[] receiveMessage() throws IOException {
+        var frame = takeMessage();
+        var message = frame.getData();
+        byte[] bytes = new byte[message.remaining()];
+        message.get(message.position(), bytes);
+        frame.release();
+        return bytes;
+    }
+
+    @Nullable
+    public byte[] receiveMessage(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        var frame = pollMessage(timeout, unit);
+        if (frame == null) return null;
+        var message = frame.getData();
+        byte[] bytes = new byte[message.remaining()];
+        message.get(message.position(), bytes);
+        frame.release();
+        return bytes;
+    }
+
+    public int receiveMessage(@NotNull ByteBuffer buffer) throws IOException {
+        return receiveMessage(new ByteBuffer[]{buffer});
+    }
+
+    // Copies the next message straight out of the datagram it arrived in, filling the buffers in order.
+    // Returns the length of the message, like a datagram socket the part that did not fit is discarded.
+    public int receiveMessage(@NotNull ByteBuffer[] buffers) throws IOException {
+        var frame = takeMessage();
+        var message = frame.getData();
+        int length = message.remaining();
+        int offset = message.position();
+        for (var buffer : buffers) {
+            int count = Math.min(buffer.remaining(), message.limit() - offset);
+            buffer.put(buffer.position(), message, offset, count);
+            buffer.position(buffer.position() + count);
+            offset += count;
+        }
+        frame.release();
+        return length;
+    }
+
+    @NotNull
+    protected StreamFrame takeMessage() throws IOException {
+        while (true) {
+            StreamFrame frame;
+            try {
+                frame = pollMessage(STREAM_ACCEPT_POLL, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            if (frame != null) return frame;
+        }
+    }
+
+    @Nullable
+    protected StreamFrame pollMessage(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        var frame = receivedMessages.poll();
+        if (frame != null) return frame;
+        if (isDead()) throw new IOException("Connection dead", deadReason);
+        return receivedMessages.poll(timeout, unit);
+    }
+
+    protected void releaseMessages() {
+        StreamFrame frame;
+        while ((frame = receivedMessages.poll()) != null) frame.release();
     }
 
     public void disconnect() {
         finalized = true;
+        wakeup();
     }
 
     public boolean isFinalized() {
@@ -407,18 +1594,63 @@ public class Connection implements AutoCloseable {
         return state == ConnectionState.DEAD;
     }
 
+    @NotNull
+    public Duration getSmoothedRtt() {
+        return Duration.ofNanos(smoothedRtt);
+    }
+
+    @NotNull
+    public Duration getRttVariance() {
+        return Duration.ofNanos(rttVariance);
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    @NotNull
+    public Duration getRetransmitTimeout() {
+        return Duration.ofNanos(retransmitTimeout);
+    }
+
     public Exception getDeadReason() {
         return deadReason;
     }
 
+    public SocketAddress getPeerAddress() {
+        return peerAddress;
+    }
+
     public void close() throws IOException {
-        dataReceiveInputStream.close();
-        dataReceiveOutputStream.close();
-        dataSendInputStream.close();
-        dataSendOutputStream.close();
+        receivePipe.close();
+        sendPipe.close();
+        for (var stream : streams.values()) stream.closePipes();
+        releaseMessages();
+        releaseChannel();
+    }
+
+    protected void releaseChannel() throws IOException {
         channel.close();
     }
 
+    protected static final class PendingMessage {
+        final ByteBuffer frame;
+        final int headroom;
+        final MessagePolicy policy;
+        final long queuedTime;
+
+        PendingMessage(ByteBuffer frame, int headroom, MessagePolicy policy, long queuedTime) {
+            this.frame = frame;
+            this.headroom = headroom;
+            this.policy = policy;
+            this.queuedTime = queuedTime;
+        }
+
+        boolean isExpired(long now) {
+            return policy.getLifetime() > 0 && now - (queuedTime + policy.getLifetime()) >= 0;
+        }
+    }
+
     public enum ConnectionState {
         TO_SEND_SYN, WAIT_SYN_ACK, // Client
         WAIT_SYN, ACKED_SYN, // Server
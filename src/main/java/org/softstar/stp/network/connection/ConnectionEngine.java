@@ -0,0 +1,9 @@
+package org.softstar.stp.network.connection;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+public interface ConnectionEngine {
+    void register(@NotNull Connection connection) throws IOException;
+}
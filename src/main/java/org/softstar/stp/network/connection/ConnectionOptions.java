@@ -0,0 +1,146 @@
+package org.softstar.stp.network.connection;
+
+import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.network.congestion.CongestionController;
+import org.softstar.stp.network.congestion.NewRenoController;
+
+import java.util.function.Supplier;
+
+public class ConnectionOptions {
+    private ConnectionEngine engine = ThreadedEngine.PLATFORM;
+    private int duplicateAckThreshold = 3;
+    private int ackFrequency = 2;
+    private Supplier<CongestionController> congestionControl = NewRenoController::new;
+    private int maxSegmentSize = Connection.DATA_PACKET_SIZE;
+    private boolean pathMtuDiscovery = true;
+    private boolean noDelay = false;
+    private boolean pacing = true;
+    private long maxBandwidth = 0;
+    private int parityGroupSize = 0;
+    private boolean adaptiveParity = true;
+    private int maxConcurrentStreams = 100;
+
+    @NotNull
+    public ConnectionEngine getEngine() {
+        return engine;
+    }
+
+    public ConnectionOptions setEngine(@NotNull ConnectionEngine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    @NotNull
+    public Supplier<CongestionController> getCongestionControl() {
+        return congestionControl;
+    }
+
+    public ConnectionOptions setCongestionControl(@NotNull Supplier<CongestionController> congestionControl) {
+        this.congestionControl = congestionControl;
+        return this;
+    }
+
+    public int getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    public ConnectionOptions setMaxSegmentSize(int maxSegmentSize) {
+        if (maxSegmentSize < 1 || maxSegmentSize > Connection.DATA_PACKET_SIZE)
+            throw new IllegalArgumentException("Segment size must be between 1 and " + Connection.DATA_PACKET_SIZE);
+        this.maxSegmentSize = maxSegmentSize;
+        return this;
+    }
+
+    public boolean isPathMtuDiscovery() {
+        return pathMtuDiscovery;
+    }
+
+    public ConnectionOptions setPathMtuDiscovery(boolean pathMtuDiscovery) {
+        this.pathMtuDiscovery = pathMtuDiscovery;
+        return this;
+    }
+
+    public boolean isNoDelay() {
+        return noDelay;
+    }
+
+    public ConnectionOptions setNoDelay(boolean noDelay) {
+        this.noDelay = noDelay;
+        return this;
+    }
+
+    public boolean isPacing() {
+        return pacing;
+    }
+
+    public ConnectionOptions setPacing(boolean pacing) {
+        this.pacing = pacing;
+        return this;
+    }
+
+    // Bytes per second, 0 for no limit. Applies even with pacing disabled.
+    public long getMaxBandwidth() {
+        return maxBandwidth;
+    }
+
+    public ConnectionOptions setMaxBandwidth(long maxBandwidth) {
+        if (maxBandwidth < 0) throw new IllegalArgumentException("Bandwidth must not be negative");
+        this.maxBandwidth = maxBandwidth;
+        return this;
+    }
+
+    // Data packets covered by one XOR parity packet, 0 to send no parity. Needs the peer to support it.
+    public int getParityGroupSize() {
+        return parityGroupSize;
+    }
+
+    public ConnectionOptions setParityGroupSize(int parityGroupSize) {
+        if (parityGroupSize != 0 && (parityGroupSize < 2 || parityGroupSize > ParityGroup.MAX_SIZE))
+            throw new IllegalArgumentException("Parity group size must be 0 or between 2 and " + ParityGroup.MAX_SIZE);
+        this.parityGroupSize = parityGroupSize;
+        return this;
+    }
+
+    // Lets the groups grow up to the maximum while the measured loss rate is low, the configured size
+    // then being the smallest group used.
+    public boolean isAdaptiveParity() {
+        return adaptiveParity;
+    }
+
+    public ConnectionOptions setAdaptiveParity(boolean adaptiveParity) {
+        this.adaptiveParity = adaptiveParity;
+        return this;
+    }
+
+    // Streams the peer may have open at a time, announced in the handshake. A peer opening more is a protocol
+    // error and kills the connection.
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    public ConnectionOptions setMaxConcurrentStreams(int maxConcurrentStreams) {
+        if (maxConcurrentStreams < 0) throw new IllegalArgumentException("Stream limit must not be negative");
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        return this;
+    }
+
+    public int getAckFrequency() {
+        return ackFrequency;
+    }
+
+    public ConnectionOptions setAckFrequency(int ackFrequency) {
+        if (ackFrequency < 1) throw new IllegalArgumentException("Ack frequency must be positive");
+        this.ackFrequency = ackFrequency;
+        return this;
+    }
+
+    public int getDuplicateAckThreshold() {
+        return duplicateAckThreshold;
+    }
+
+    public ConnectionOptions setDuplicateAckThreshold(int duplicateAckThreshold) {
+        if (duplicateAckThreshold < 0) throw new IllegalArgumentException("Threshold must not be negative");
+        this.duplicateAckThreshold = duplicateAckThreshold;
+        return this;
+    }
+}
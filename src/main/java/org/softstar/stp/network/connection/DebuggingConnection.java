@@ -17,11 +17,15 @@ public class DebuggingConnection extends Connection {
 
     private final String name;
 
-    public DebuggingConnection(String name, DatagramChannel channel, SocketAddress peerAddress, boolean isServer) throws IOException {
-        super(channel, peerAddress, isServer, new DebuggingEncoder(name, CORRUPT_RATE), new CRC32PacketDecoder());
+    public DebuggingConnection(String name, DatagramChannel channel, SocketAddress peerAddress, boolean isServer, ConnectionOptions options) throws IOException {
+        super(channel, peerAddress, isServer ? ConnectionState.WAIT_SYN : ConnectionState.TO_SEND_SYN, new DebuggingEncoder(name, CORRUPT_RATE), new CRC32PacketDecoder(), options);
         this.name = name;
     }
 
+    public DebuggingConnection(String name, DatagramChannel channel, SocketAddress peerAddress, boolean isServer) throws IOException {
+        this(name, channel, peerAddress, isServer, new ConnectionOptions());
+    }
+
     @Override
     protected void sendPacket(@NotNull Packet packet) {
         boolean drop = ThreadLocalRandom.current().nextDouble() <= DROP_RATE;
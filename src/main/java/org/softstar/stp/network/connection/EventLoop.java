@@ -0,0 +1,168 @@
+package org.softstar.stp.network.connection;
+
+import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.utils.TimerWheel;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+class EventLoop {
+    private static final int TIMER_RESOLUTION_SHIFT = 17;
+    private static final int TIMER_SLOTS = 1024;
+    private static final long SELECT_THRESHOLD = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_WAIT = TimeUnit.SECONDS.toNanos(1);
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Connection> registrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> wakeups = new ConcurrentLinkedQueue<>();
+    private final Set<Connection> connections = new HashSet<>();
+    private final List<Connection> pending = new ArrayList<>();
+    private final TimerWheel<Connection> timers = new TimerWheel<>(TIMER_RESOLUTION_SHIFT, TIMER_SLOTS, System.nanoTime());
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    EventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void register(@NotNull Connection connection) throws IOException {
+        if (closed) throw new IOException("Engine closed");
+        connectionCount.incrementAndGet();
+        connection.eventLoop = this;
+        registrations.offer(connection);
+        selector.wakeup();
+        LockSupport.unpark(thread);
+    }
+
+    void wakeup(@NotNull Connection connection) {
+        wakeups.offer(connection);
+        selector.wakeup();
+        LockSupport.unpark(thread);
+    }
+
+    int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    void close() {
+        closed = true;
+        selector.wakeup();
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                long wait = Math.min(timers.nextDeadline() - System.nanoTime(), MAX_WAIT);
+                if (wait <= 0 || !registrations.isEmpty() || !wakeups.isEmpty()) {
+                    selector.selectNow();
+                } else if (wait < SELECT_THRESHOLD) {
+                    if (selector.selectNow() == 0) LockSupport.parkNanos(wait);
+                } else {
+                    selector.select(TimeUnit.NANOSECONDS.toMillis(wait));
+                }
+            } catch (IOException e) {
+                break;
+            }
+
+            acceptRegistrations();
+
+            for (var key : selector.selectedKeys()) {
+                var connection = (Connection) key.attachment();
+                if (!key.isValid()) continue;
+                if (key.isWritable()) key.interestOps(SelectionKey.OP_READ);
+                if (key.isReadable()) connection.receivePackets(Connection.RECEIVE_BATCH);
+                process(connection);
+            }
+            selector.selectedKeys().clear();
+
+            Connection woken;
+            while ((woken = wakeups.poll()) != null) {
+                if (woken.receivePackets(Connection.RECEIVE_BATCH)) pending.add(woken);
+                process(woken);
+            }
+            wakeups.addAll(pending);
+            pending.clear();
+
+            timers.expire(System.nanoTime(), this::process);
+        }
+
+        for (var connection : connections) {
+            if (connection.isDead()) continue;
+            connection.deadReason = new IOException("Engine closed");
+            connection.state = Connection.ConnectionState.DEAD;
+            connection.onDead();
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void acceptRegistrations() {
+        Connection connection;
+        while ((connection = registrations.poll()) != null) {
+            if (connection.ownsChannel()) {
+                try {
+                    connection.selectionKey = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (ClosedChannelException e) {
+                    connection.deadReason = e;
+                    connection.state = Connection.ConnectionState.DEAD;
+                    connectionCount.decrementAndGet();
+                    continue;
+                }
+            }
+            connection.timer = timers.newTimer(connection);
+            connections.add(connection);
+            process(connection);
+        }
+    }
+
+    private void process(@NotNull Connection connection) {
+        if (connection.timer == null) return;
+        connection.update();
+        boolean flushed = flush(connection);
+
+        if (connection.isDead()) {
+            remove(connection);
+            return;
+        }
+        long deadline = connection.nextDeadline();
+        if (!flushed) deadline = Math.min(deadline, System.nanoTime() + Connection.SEND_RETRY_DELAY);
+        timers.schedule(connection.timer, deadline);
+    }
+
+    // Returns false if the rest of the send queue has to be retried on a timer. A connection sharing the
+    // listener's channel has no key of its own to wait for it to become writable.
+    private boolean flush(@NotNull Connection connection) {
+        if (connection.flushSendQueue()) return true;
+        var key = connection.selectionKey;
+        if (key == null) return false;
+        if (key.isValid()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        return true;
+    }
+
+    private void remove(@NotNull Connection connection) {
+        if (!connections.remove(connection)) return;
+        timers.cancel(connection.timer);
+        connection.timer = null;
+        if (connection.selectionKey != null) connection.selectionKey.cancel();
+        connectionCount.decrementAndGet();
+        connection.onDead();
+    }
+}
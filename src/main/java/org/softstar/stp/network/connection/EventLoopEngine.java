@@ -0,0 +1,42 @@
+package org.softstar.stp.network.connection;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+public class EventLoopEngine implements ConnectionEngine, AutoCloseable {
+    private final EventLoop[] loops;
+
+    public EventLoopEngine(int threads) throws IOException {
+        if (threads <= 0) throw new IllegalArgumentException("Thread count must be positive");
+        loops = new EventLoop[threads];
+        for (int i = 0; i < threads; ++i) loops[i] = new EventLoop("stp-event-loop-" + i);
+    }
+
+    public EventLoopEngine() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public void register(@NotNull Connection connection) throws IOException {
+        EventLoop target = loops[0];
+        for (var loop : loops)
+            if (loop.getConnectionCount() < target.getConnectionCount()) target = loop;
+        target.register(connection);
+    }
+
+    public int getThreadCount() {
+        return loops.length;
+    }
+
+    public int getConnectionCount() {
+        int count = 0;
+        for (var loop : loops) count += loop.getConnectionCount();
+        return count;
+    }
+
+    @Override
+    public void close() {
+        for (var loop : loops) loop.close();
+    }
+}
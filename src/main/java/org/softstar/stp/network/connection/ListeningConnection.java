@@ -1,5 +1,200 @@
 package org.softstar.stp.network.connection;
 
-// TODO
-public class ListeningConnection {
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.softstar.stp.network.decoder.AbstractPacketDecoder;
+import org.softstar.stp.network.decoder.CRC32PacketDecoder;
+import org.softstar.stp.network.encoder.AbstractPacketEncoder;
+import org.softstar.stp.network.encoder.CRC32PacketEncoder;
+import org.softstar.stp.network.packet.SynPacket;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+public class ListeningConnection implements AutoCloseable {
+    protected static final int BACKLOG_SIZE = 128;
+    protected static final long SELECT_TIMEOUT = 25;
+
+    protected final DatagramChannel channel;
+    protected final Selector selector;
+    protected final Supplier<AbstractPacketEncoder> encoderFactory;
+    protected final Supplier<AbstractPacketDecoder> decoderFactory;
+    protected final ConnectionOptions options;
+    protected final AbstractPacketDecoder handshakeDecoder;
+    protected final Map<SocketAddress, MultiplexedConnection> connections = new ConcurrentHashMap<>();
+    protected final BlockingQueue<Connection> backlog = new ArrayBlockingQueue<>(BACKLOG_SIZE);
+    protected volatile boolean closed = false;
+    protected volatile Exception deadReason = null;
+    protected boolean dontFragment = false;
+
+    // The receiving thread is only started by start(), so subclasses are fully constructed before it runs.
+    protected ListeningConnection(DatagramChannel channel, Supplier<AbstractPacketEncoder> encoderFactory, Supplier<AbstractPacketDecoder> decoderFactory, ConnectionOptions options) throws IOException {
+        this.channel = channel;
+        this.encoderFactory = encoderFactory;
+        this.decoderFactory = decoderFactory;
+        this.options = options;
+        this.handshakeDecoder = decoderFactory.get();
+        channel.configureBlocking(false);
+        this.selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    @NotNull
+    public static ListeningConnection open(DatagramChannel channel, Supplier<AbstractPacketEncoder> encoderFactory, Supplier<AbstractPacketDecoder> decoderFactory, ConnectionOptions options) throws IOException {
+        var listener = new ListeningConnection(channel, encoderFactory, decoderFactory, options);
+        listener.start();
+        return listener;
+    }
+
+    @NotNull
+    public static ListeningConnection open(DatagramChannel channel, Supplier<AbstractPacketEncoder> encoderFactory, Supplier<AbstractPacketDecoder> decoderFactory) throws IOException {
+        return open(channel, encoderFactory, decoderFactory, new ConnectionOptions());
+    }
+
+    @NotNull
+    public static ListeningConnection open(DatagramChannel channel, ConnectionOptions options) throws IOException {
+        return open(channel, CRC32PacketEncoder::new, CRC32PacketDecoder::new, options);
+    }
+
+    @NotNull
+    public static ListeningConnection open(DatagramChannel channel) throws IOException {
+        return open(channel, new ConnectionOptions());
+    }
+
+    protected void start() throws IOException {
+        if (options.isPathMtuDiscovery()) dontFragment = Connection.enableDontFragment(channel);
+        new Thread(this::loop).start();
+    }
+
+    protected void loop() {
+        ByteBuffer buffer = Connection.RECEIVE_POOL.acquire();
+        while (!closed || !connections.isEmpty()) {
+            try {
+                selector.select(SELECT_TIMEOUT);
+                selector.selectedKeys().clear();
+
+                SocketAddress address;
+                while ((address = channel.receive(buffer.clear())) != null) {
+                    buffer.flip();
+                    if (dispatch(address, buffer)) buffer = Connection.RECEIVE_POOL.acquire();
+                }
+            } catch (IOException e) {
+                deadReason = e;
+                break;
+            }
+        }
+        Connection.RECEIVE_POOL.release(buffer);
+
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    protected boolean dispatch(@NotNull SocketAddress address, @NotNull ByteBuffer buffer) {
+        var connection = connections.get(address);
+        if (connection != null && connection.isDead()) {
+            connections.remove(address, connection);
+            connection = null;
+        }
+        if (connection == null) {
+            connection = tryAccept(address, buffer);
+            if (connection == null) return false;
+        }
+        return connection.offer(buffer);
+    }
+
+    @Nullable
+    protected MultiplexedConnection tryAccept(@NotNull SocketAddress address, @NotNull ByteBuffer buffer) {
+        if (closed || backlog.remainingCapacity() == 0) return null;
+        try {
+            if (!(handshakeDecoder.fromByteBuffer(buffer.duplicate()) instanceof SynPacket)) return null;
+        } catch (Exception e) {
+            return null;
+        }
+
+        MultiplexedConnection connection;
+        try {
+            connection = newConnection(address);
+            connections.put(address, connection);
+            connection.start();
+        } catch (IOException e) {
+            connections.remove(address);
+            return null;
+        }
+        backlog.offer(connection);
+        if (closed) closeBacklog();
+        return connection;
+    }
+
+    // Nobody can accept these any more.
+    protected void closeBacklog() {
+        Connection connection;
+        while ((connection = backlog.poll()) != null) {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @NotNull
+    protected MultiplexedConnection newConnection(@NotNull SocketAddress address) throws IOException {
+        return new MultiplexedConnection(this, channel, address, encoderFactory.get(), decoderFactory.get(), options);
+    }
+
+    void unregister(@NotNull MultiplexedConnection connection) {
+        connections.remove(connection.getPeerAddress(), connection);
+        if (closed) selector.wakeup();
+    }
+
+    @NotNull
+    public Connection accept() throws IOException {
+        while (true) {
+            Connection connection;
+            try {
+                connection = accept(SELECT_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            if (connection != null) return connection;
+        }
+    }
+
+    @Nullable
+    public Connection accept(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        if (closed) throw new IOException("Listener closed");
+        if (deadReason != null) throw new IOException(deadReason);
+        return backlog.poll(timeout, unit);
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public Exception getDeadReason() {
+        return deadReason;
+    }
+
+    public void close() {
+        closed = true;
+        closeBacklog();
+        selector.wakeup();
+    }
 }
@@ -0,0 +1,43 @@
+package org.softstar.stp.network.connection;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+
+// How long a message keeps being retransmitted. Once a message is given up on, its retransmission only
+// carries an abandoned marker, so the receiver can move past it without ever seeing the message.
+public final class MessagePolicy {
+    public static final MessagePolicy RELIABLE = new MessagePolicy(0, 0);
+    public static final MessagePolicy UNRELIABLE = new MessagePolicy(1, 0);
+
+    private final int maxTransmissions;
+    private final long lifetime;
+
+    private MessagePolicy(int maxTransmissions, long lifetime) {
+        this.maxTransmissions = maxTransmissions;
+        this.lifetime = lifetime;
+    }
+
+    // The deadline counts from the sendMessage call, a message that has not gone out by then is dropped.
+    @NotNull
+    public static MessagePolicy deadline(@NotNull Duration lifetime) {
+        if (lifetime.isNegative() || lifetime.isZero()) throw new IllegalArgumentException("Lifetime must be positive");
+        return new MessagePolicy(0, lifetime.toNanos());
+    }
+
+    @NotNull
+    public static MessagePolicy maxRetransmits(int count) {
+        if (count < 0) throw new IllegalArgumentException("Retransmit count must not be negative");
+        return new MessagePolicy(count + 1, 0);
+    }
+
+    // 0 for no limit.
+    public int getMaxTransmissions() {
+        return maxTransmissions;
+    }
+
+    // Nanoseconds, 0 for no deadline.
+    public long getLifetime() {
+        return lifetime;
+    }
+}
@@ -0,0 +1,42 @@
+package org.softstar.stp.network.connection;
+
+import org.softstar.stp.network.decoder.AbstractPacketDecoder;
+import org.softstar.stp.network.encoder.AbstractPacketEncoder;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+
+class MultiplexedConnection extends Connection {
+    private final ListeningConnection listener;
+
+    MultiplexedConnection(ListeningConnection listener, DatagramChannel channel, SocketAddress peerAddress, AbstractPacketEncoder encoder, AbstractPacketDecoder decoder, ConnectionOptions options) throws IOException {
+        super(channel, peerAddress, ConnectionState.WAIT_SYN, encoder, decoder, options, false);
+        this.listener = listener;
+        this.dontFragment = listener.dontFragment;
+        useReceiveQueue();
+    }
+
+    @Override
+    protected boolean ownsChannel() {
+        return false;
+    }
+
+    // The shared channel stays open, so closing has to stop the loop itself.
+    @Override
+    protected void releaseChannel() {
+        if (!isDead()) {
+            deadReason = new IOException("Connection closed");
+            state = ConnectionState.DEAD;
+            wakeup();
+        }
+        listener.unregister(this);
+    }
+
+    // A connection that dies on its own is unregistered too, the listener only ends once none are left.
+    @Override
+    protected void onDead() {
+        super.onDead();
+        listener.unregister(this);
+    }
+}
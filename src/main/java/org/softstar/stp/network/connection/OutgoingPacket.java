@@ -0,0 +1,74 @@
+package org.softstar.stp.network.connection;
+
+import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.network.packet.DataPacket;
+
+public class OutgoingPacket {
+    private DataPacket packet;
+    private long sentTime;
+    private int transmissions = 0;
+    private boolean acked = false;
+    private boolean lossCounted = false;
+    private int maxTransmissions = 0;
+    private boolean expires = false;
+    private long expiry = 0;
+
+    public OutgoingPacket(@NotNull DataPacket packet) {
+        this.packet = packet;
+    }
+
+    public OutgoingPacket(@NotNull DataPacket packet, @NotNull MessagePolicy policy, long queuedTime) {
+        this.packet = packet;
+        this.maxTransmissions = policy.getMaxTransmissions();
+        this.expires = policy.getLifetime() > 0;
+        this.expiry = queuedTime + policy.getLifetime();
+    }
+
+    @NotNull
+    public DataPacket getPacket() {
+        return packet;
+    }
+
+    public long getSeqNumber() {
+        return packet.getSeqNumber();
+    }
+
+    public long getSentTime() {
+        return sentTime;
+    }
+
+    public int getTransmissions() {
+        return transmissions;
+    }
+
+    public boolean isAcked() {
+        return acked;
+    }
+
+    boolean shouldAbandon(long now) {
+        return maxTransmissions > 0 && transmissions >= maxTransmissions || expires && now - expiry >= 0;
+    }
+
+    // The replacement keeps the sequence number and is retransmitted like any other packet.
+    void abandon(@NotNull DataPacket replacement) {
+        packet = replacement;
+        maxTransmissions = 0;
+        expires = false;
+    }
+
+    void onSent(long now) {
+        sentTime = now;
+        ++transmissions;
+    }
+
+    // Returns true only the first time, a packet counts as lost once however often it is retransmitted.
+    boolean markLost() {
+        if (lossCounted) return false;
+        lossCounted = true;
+        return true;
+    }
+
+    void onAcked() {
+        acked = true;
+    }
+}
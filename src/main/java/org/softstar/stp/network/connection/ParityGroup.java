@@ -0,0 +1,52 @@
+package org.softstar.stp.network.connection;
+
+import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.network.packet.DataPacket;
+import org.softstar.stp.network.packet.ParityPacket;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Accumulates the XOR parity of consecutive data packets as they are first sent.
+class ParityGroup {
+    static final int MAX_SIZE = ParityPacket.MAX_COUNT;
+
+    private final byte[] parity = new byte[Connection.DATA_PACKET_SIZE];
+    private long firstSeqNumber;
+    private int count = 0;
+    private int length = 0;
+    private int lengthXor = 0;
+
+    void add(@NotNull DataPacket packet) {
+        if (count == 0) firstSeqNumber = packet.getSeqNumber();
+        var payload = packet.getPayload();
+        xor(parity, payload);
+        length = Math.max(length, payload.remaining());
+        lengthXor ^= payload.remaining();
+        ++count;
+    }
+
+    int size() {
+        return count;
+    }
+
+    @NotNull
+    ParityPacket finish() {
+        var packet = new ParityPacket(firstSeqNumber, count, lengthXor, Arrays.copyOf(parity, length));
+        Arrays.fill(parity, 0, length, (byte) 0);
+        count = 0;
+        length = 0;
+        lengthXor = 0;
+        return packet;
+    }
+
+    static void xor(byte[] out, @NotNull ByteBuffer data) {
+        var buffer = ByteBuffer.wrap(out);
+        int offset = data.position();
+        int length = data.remaining();
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES)
+            buffer.putLong(i, buffer.getLong(i) ^ data.getLong(offset + i));
+        for (; i < length; ++i) out[i] ^= data.get(offset + i);
+    }
+}
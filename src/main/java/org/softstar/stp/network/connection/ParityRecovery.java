@@ -0,0 +1,116 @@
+package org.softstar.stp.network.connection;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.softstar.stp.network.packet.DataPacket;
+import org.softstar.stp.network.packet.ParityPacket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Keeps copies of recently received payloads, so that a parity packet can rebuild the one packet its group
+// is missing. Parity that arrives while more than one packet is missing waits for the rest to come in.
+class ParityRecovery {
+    private static final int HISTORY = ParityGroup.MAX_SIZE * 2;
+    private static final int MAX_PENDING = 16;
+
+    private final byte[][] payloads = new byte[HISTORY][];
+    private final int[] lengths = new int[HISTORY];
+    private final long[] seqNumbers = new long[HISTORY];
+    private final List<ParityPacket> pending = new ArrayList<>();
+    private final byte[] scratch = new byte[ParityPacket.MAX_LENGTH];
+
+    ParityRecovery() {
+        Arrays.fill(seqNumbers, -1);
+    }
+
+    // A packet that is not covered counts as received but cannot take part in rebuilding another one.
+    void onData(@NotNull DataPacket packet, boolean covered) {
+        int slot = (int) (packet.getSeqNumber() & (HISTORY - 1));
+        seqNumbers[slot] = packet.getSeqNumber();
+        if (!covered) {
+            lengths[slot] = -1;
+            return;
+        }
+        var payload = packet.getPayload();
+        int length = payload.remaining();
+        if (payloads[slot] == null || payloads[slot].length < length) payloads[slot] = new byte[length];
+        payload.get(payload.position(), payloads[slot], 0, length);
+        lengths[slot] = length;
+    }
+
+    boolean has(long seqNumber) {
+        return seqNumbers[(int) (seqNumber & (HISTORY - 1))] == seqNumber;
+    }
+
+    // Returns the rebuilt packet if the group is missing exactly one packet at or above base.
+    @Nullable
+    DataPacket onParity(@NotNull ParityPacket parity, long base) {
+        var recovered = recover(parity, base);
+        if (recovered != null || isSettled(parity, base)) {
+            parity.release();
+            return recovered;
+        }
+        if (pending.size() == MAX_PENDING) pending.removeFirst().release();
+        pending.add(parity);
+        return null;
+    }
+
+    // Retries the waiting parity packets covering a newly received packet.
+    @Nullable
+    DataPacket onReceived(long seqNumber, long base) {
+        for (int i = 0; i < pending.size(); ++i) {
+            var parity = pending.get(i);
+            long index = seqNumber - parity.getSeqNumber();
+            if (index < 0 || index >= parity.getCount()) continue;
+            var recovered = recover(parity, base);
+            if (recovered == null && !isSettled(parity, base)) continue;
+            pending.remove(i).release();
+            return recovered;
+        }
+        return null;
+    }
+
+    void clear() {
+        for (var parity : pending) parity.release();
+        pending.clear();
+    }
+
+    // Nothing is left to rebuild once every packet of the group arrived or was delivered.
+    private boolean isSettled(@NotNull ParityPacket parity, long base) {
+        for (int i = 0; i < parity.getCount(); ++i) {
+            long seqNumber = parity.getSeqNumber() + i;
+            if (seqNumber >= base && !has(seqNumber)) return false;
+        }
+        return true;
+    }
+
+    @Nullable
+    private DataPacket recover(@NotNull ParityPacket parity, long base) {
+        long missing = -1;
+        for (int i = 0; i < parity.getCount(); ++i) {
+            long seqNumber = parity.getSeqNumber() + i;
+            if (has(seqNumber)) continue;
+            if (missing != -1 || seqNumber < base) return null;
+            missing = seqNumber;
+        }
+        if (missing == -1) return null;
+
+        var data = parity.getPayload();
+        int length = parity.getLengthXor();
+        Arrays.fill(scratch, 0, data.remaining(), (byte) 0);
+        ParityGroup.xor(scratch, data);
+        for (int i = 0; i < parity.getCount(); ++i) {
+            long seqNumber = parity.getSeqNumber() + i;
+            if (seqNumber == missing) continue;
+            int slot = (int) (seqNumber & (HISTORY - 1));
+            if (lengths[slot] < 0 || lengths[slot] > data.remaining()) return null;
+            ParityGroup.xor(scratch, ByteBuffer.wrap(payloads[slot], 0, lengths[slot]));
+            length ^= lengths[slot];
+        }
+        if (length < 0 || length > data.remaining()) return null;
+        return DataPacket.wrap(missing, Arrays.copyOf(scratch, length));
+    }
+}
@@ -0,0 +1,91 @@
+package org.softstar.stp.network.connection;
+
+import java.util.concurrent.TimeUnit;
+
+// Packetization layer path MTU discovery (RFC 8899) over datagram sizes, searched between a confirmed
+// lower bound and the configured maximum. Probes are sent with the don't fragment bit set, so a probe
+// only gets acknowledged when a datagram of its size crosses the path whole.
+class PathMtuProber {
+    static final int BASE_DATAGRAM_SIZE = 1200;
+    private static final int ETHERNET_DATAGRAM_SIZE = 1472;
+    private static final int SEARCH_GRANULARITY = 16;
+    private static final int MAX_PROBES = 3;
+    private static final long RAISE_INTERVAL = TimeUnit.MINUTES.toNanos(10);
+
+    private final int maxSize;
+    private int confirmedSize;
+    private int upperBound;
+    private int probeSize = 0;
+    private long probeNumber = 0;
+    private int attempts = 0;
+    private boolean searching = true;
+    private long nextEvent;
+
+    PathMtuProber(int maxSize, long now) {
+        this.maxSize = maxSize;
+        this.confirmedSize = Math.min(BASE_DATAGRAM_SIZE, maxSize);
+        this.upperBound = maxSize;
+        this.nextEvent = now;
+    }
+
+    // Returns the size of the probe to send now, or 0 if none is due.
+    int poll(long now, long timeout) {
+        if (now - nextEvent < 0) return 0;
+        if (!searching) {
+            searching = true;
+            upperBound = maxSize;
+        }
+        if (probeSize != 0 && attempts >= MAX_PROBES) {
+            upperBound = probeSize - 1;
+            probeSize = 0;
+        }
+        if (probeSize == 0) {
+            int gap = upperBound - confirmedSize;
+            if (gap == 0 || gap < SEARCH_GRANULARITY && upperBound != maxSize) {
+                searching = false;
+                nextEvent = now + RAISE_INTERVAL;
+                return 0;
+            }
+            // Most paths are plain Ethernet, so that size is tried before bisecting. Near the configured
+            // maximum the maximum itself is tried rather than stopping within the granularity.
+            if (gap < SEARCH_GRANULARITY) probeSize = upperBound;
+            else if (confirmedSize < ETHERNET_DATAGRAM_SIZE && ETHERNET_DATAGRAM_SIZE <= upperBound) probeSize = ETHERNET_DATAGRAM_SIZE;
+            else probeSize = (confirmedSize + upperBound + 1) >>> 1;
+            ++probeNumber;
+            attempts = 0;
+        }
+        ++attempts;
+        nextEvent = now + timeout;
+        return probeSize;
+    }
+
+    // Returns true if the confirmed size grew.
+    boolean onProbeAcked(long probeNumber, long now) {
+        if (probeSize == 0 || probeNumber != this.probeNumber) return false;
+        confirmedSize = probeSize;
+        probeSize = 0;
+        nextEvent = now;
+        return true;
+    }
+
+    // Datagrams of the given size no longer cross the path, the search starts over from the base size below it.
+    void onShrunk(int size, long now) {
+        confirmedSize = Math.min(BASE_DATAGRAM_SIZE, maxSize);
+        upperBound = Math.max(confirmedSize, Math.min(upperBound, size - 1));
+        probeSize = 0;
+        searching = true;
+        nextEvent = now;
+    }
+
+    int getConfirmedSize() {
+        return confirmedSize;
+    }
+
+    long getProbeNumber() {
+        return probeNumber;
+    }
+
+    long getNextEvent() {
+        return nextEvent;
+    }
+}
@@ -0,0 +1,209 @@
+package org.softstar.stp.network.connection;
+
+import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.network.packet.StreamFrame;
+import org.softstar.stp.utils.BytePipe;
+import org.softstar.stp.utils.CircularArray;
+
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+// An ordered byte stream multiplexed over a connection. Each stream reassembles its own packets and has its
+// own credit, so a loss or a slow reader on one stream never holds up the others.
+public class Stream implements AutoCloseable {
+    protected static final int STREAM_WINDOW = 256;
+    protected static final int WINDOW_UPDATE_STEP = STREAM_WINDOW / 4;
+    protected static final int PIPE_SIZE = 1 << 20;
+
+    protected final Connection connection;
+    protected final int id;
+    protected final BytePipe sendPipe;
+    protected final BytePipe receivePipe;
+    protected final ReentrantLock readLock = new ReentrantLock();
+    protected final ReentrantLock writeLock = new ReentrantLock();
+    protected final CircularArray<StreamFrame> reorderWindow = new CircularArray<>(STREAM_WINDOW, STREAM_WINDOW);
+    protected long sendSeq = 0;
+    protected long deliverSeq = 0;
+    protected long peerLimit = STREAM_WINDOW - 1;
+    protected long advertisedLimit = STREAM_WINDOW - 1;
+    protected long lastCreditTime;
+    protected int largestReceivedPayload = 0;
+    protected volatile boolean closeRequested = false;
+    protected boolean finSent = false;
+    protected boolean finReceived = false;
+    protected boolean registered = false;
+    protected volatile boolean eventQueued = false;
+    protected volatile long bytesWritten = 0;
+    protected volatile long flushMark = 0;
+    protected long bytesPacketized = 0;
+
+    Stream(@NotNull Connection connection, int id, @NotNull BytePipe sendPipe, @NotNull BytePipe receivePipe) {
+        this.connection = connection;
+        this.id = id;
+        this.sendPipe = sendPipe;
+        this.receivePipe = receivePipe;
+    }
+
+    Stream(@NotNull Connection connection, int id) {
+        this(connection, id, new BytePipe(PIPE_SIZE), new BytePipe(PIPE_SIZE));
+    }
+
+    // Returns false if the frame lies beyond the window, it is then left unacknowledged.
+    boolean onFrame(@NotNull StreamFrame frame) {
+        long index = frame.getStreamSeq() - deliverSeq;
+        if (index < 0) {
+            frame.release();
+            return true;
+        }
+        if (index >= STREAM_WINDOW) return false;
+        largestReceivedPayload = Math.max(largestReceivedPayload, frame.getData().remaining());
+        var old = reorderWindow.set((int) index, frame);
+        if (old != null) old.release();
+        return true;
+    }
+
+    void deliver() {
+        StreamFrame frame;
+        while ((frame = reorderWindow.getFirst()) != null) {
+            try {
+                if (!receivePipe.tryWrite(frame.getData())) break;
+            } catch (IOException ignored) {
+            }
+            reorderWindow.removeFirst();
+            reorderWindow.add(null);
+            frame.release();
+            ++deliverSeq;
+            if (frame.isFin()) {
+                finReceived = true;
+                receivePipe.close();
+            }
+        }
+    }
+
+    long getReceiveLimit() {
+        int window = receivePipe.remainingCapacity() / Math.max(largestReceivedPayload, 1);
+        return deliverSeq + Math.min(STREAM_WINDOW - 1, window);
+    }
+
+    void onPeerLimit(long limit, long now) {
+        if (limit - peerLimit > 0) peerLimit = limit;
+        lastCreditTime = now;
+    }
+
+    // Bytes of data the next frame would carry, or -1 if nothing may be sent. Once the credit is used up
+    // one frame per timeout goes out regardless, it makes the receiver repeat a lost window update.
+    int getSendableLength(int maxData, boolean partial, long now, long timeout) {
+        boolean closing = closeRequested && !finSent;
+        int available = sendPipe.available();
+        if (available == 0 && !closing) return -1;
+        if (available < maxData && !partial && !closing) return -1;
+        if (sendSeq - peerLimit >= 0 && now - lastCreditTime < timeout) return -1;
+        return Math.min(available, maxData);
+    }
+
+    long getProbeTime(long timeout) {
+        return lastCreditTime + timeout;
+    }
+
+    boolean isCreditBlocked() {
+        return sendSeq - peerLimit >= 0 && (sendPipe.available() > 0 || closeRequested && !finSent);
+    }
+
+    byte[] nextPayload(int length) throws IOException {
+        boolean fin = closeRequested && length == sendPipe.available();
+        byte[] payload = new byte[StreamFrame.HEADER_LENGTH + length];
+        if (length > 0) bytesPacketized += sendPipe.read(payload, StreamFrame.HEADER_LENGTH, length);
+        StreamFrame.writeHeader(payload, id, sendSeq, fin ? StreamFrame.FLAG_FIN : 0);
+        if (sendSeq - peerLimit >= 0) lastCreditTime = connection.now;
+        ++sendSeq;
+        if (fin) finSent = true;
+        return payload;
+    }
+
+    boolean hasPendingData() {
+        return sendPipe.available() > 0 || closeRequested && !finSent;
+    }
+
+    boolean isFlushing() {
+        return bytesPacketized - flushMark < 0;
+    }
+
+    boolean isFinished() {
+        return finSent && finReceived;
+    }
+
+    void closePipes() {
+        receivePipe.close();
+        sendPipe.close();
+    }
+
+    void onDead() {
+        closePipes();
+        for (int i = 0; i < reorderWindow.size(); ++i) {
+            var frame = reorderWindow.set(i, null);
+            if (frame != null) frame.release();
+        }
+    }
+
+    // Asks the connection loop to deliver held frames and to send a window update if one is due.
+    void onRead() {
+        if (eventQueued) return;
+        eventQueued = true;
+        connection.onStreamEvent(this);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int read(byte[] buf) throws IOException {
+        return read(buf, buf.length);
+    }
+
+    public int read(byte[] buf, int len) throws IOException {
+        int read;
+        readLock.lock();
+        try {
+            read = receivePipe.read(buf, 0, len);
+        } finally {
+            readLock.unlock();
+        }
+        onRead();
+        return read;
+    }
+
+    public void write(byte[] data) throws IOException {
+        write(data, data.length);
+    }
+
+    public void write(byte[] data, int len) throws IOException {
+        if (closeRequested) throw new IOException("Stream closed");
+        writeLock.lock();
+        try {
+            for (int offset = 0; offset < len; offset += Connection.WRITE_CHUNK_SIZE) {
+                int length = Math.min(Connection.WRITE_CHUNK_SIZE, len - offset);
+                sendPipe.write(data, offset, length);
+                bytesWritten += length;
+                connection.wakeup();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Sends everything written to this stream so far without waiting for full segments, see Connection.flush.
+    public void flush() {
+        flushMark = bytesWritten;
+        connection.wakeup();
+    }
+
+    // Closes the sending side once everything written so far has been sent, reading stays possible.
+    public void close() {
+        closeRequested = true;
+        connection.onStreamEvent(this);
+    }
+
+    public boolean isClosed() {
+        return closeRequested;
+    }
+}
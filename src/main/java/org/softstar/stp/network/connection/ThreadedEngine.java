@@ -0,0 +1,35 @@
+package org.softstar.stp.network.connection;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+
+public class ThreadedEngine implements ConnectionEngine {
+    public static final ThreadedEngine PLATFORM = new ThreadedEngine(Thread.ofPlatform().factory());
+    public static final ThreadedEngine VIRTUAL = new ThreadedEngine(Thread.ofVirtual().name("stp-connection-", 0).factory(), true);
+
+    private final ThreadFactory threadFactory;
+    private final boolean blockingReceive;
+
+    // With blockingReceive each connection gets a receiving thread instead of a selector, which suits virtual threads.
+    public ThreadedEngine(@NotNull ThreadFactory threadFactory, boolean blockingReceive) {
+        this.threadFactory = threadFactory;
+        this.blockingReceive = blockingReceive;
+    }
+
+    public ThreadedEngine(@NotNull ThreadFactory threadFactory) {
+        this(threadFactory, false);
+    }
+
+    @Override
+    public void register(@NotNull Connection connection) throws IOException {
+        if (blockingReceive && connection.ownsChannel()) {
+            connection.channel.configureBlocking(true);
+            connection.useReceiveQueue();
+            threadFactory.newThread(connection::receiveLoop).start();
+        }
+        threadFactory.newThread(connection::sendLoop).start();
+        threadFactory.newThread(connection::loop).start();
+    }
+}
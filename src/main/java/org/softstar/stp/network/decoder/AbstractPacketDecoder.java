@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import org.softstar.stp.network.packet.Packet;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 
 public abstract class AbstractPacketDecoder {
     @NotNull
@@ -12,6 +13,27 @@ public abstract class AbstractPacketDecoder {
         return fromByteBuffer(buffer);
     }
 
+    public int getSupportedFeatures() {
+        return 0;
+    }
+
+    @NotNull
+    public AbstractPacketDecoder negotiate(int features) {
+        return this;
+    }
+
     @NotNull
     public abstract Packet fromByteBuffer(@NotNull ByteBuffer buffer);
+
+    // Compact packets carry truncated sequence and ack numbers, they are expanded to the values nearest to
+    // these. Decoders without a compact layout can ignore them.
+    @NotNull
+    public Packet fromByteBuffer(@NotNull ByteBuffer buffer, long expectedSeqNumber, long expectedAckNumber) {
+        return fromByteBuffer(buffer);
+    }
+
+    // A datagram holds a single packet, or several when it is a bundle. They are added to out in order.
+    public void fromByteBuffer(@NotNull ByteBuffer buffer, long expectedSeqNumber, long expectedAckNumber, @NotNull List<Packet> out) {
+        out.add(fromByteBuffer(buffer, expectedSeqNumber, expectedAckNumber));
+    }
 }
@@ -1,28 +1,157 @@
 package org.softstar.stp.network.decoder;
 
 import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.exception.CorruptedPacketException;
 import org.softstar.stp.network.packet.*;
+import org.softstar.stp.utils.VarInt;
 
 import java.nio.ByteBuffer;
-import java.util.Map;
-import java.util.function.Function;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 public class BasicPacketDecoder extends AbstractPacketDecoder {
-    private static final Map<Byte, Function<ByteBuffer, Packet>> CONSTRUCTORS = Map.of(
-            SynPacket.TYPE, SynPacket::new,
-            SynAckPacket.TYPE, SynAckPacket::new,
-            DataPacket.TYPE, DataPacket::new,
-            AckPacket.TYPE, AckPacket::new,
-            FinPacket.TYPE, FinPacket::new,
-            FinAckPacket.TYPE, FinAckPacket::new
-    );
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<byte[]> INFLATE_BUFFER = ThreadLocal.withInitial(() -> new byte[1 << 16]);
+
+    @Override
+    public int getSupportedFeatures() {
+        return Features.SACK | Features.DATA_ACK | Features.PMTUD | Features.COMPRESSION | Features.BUNDLE | Features.COMPACT;
+    }
 
     @Override
     @NotNull
     public Packet fromByteBuffer(@NotNull ByteBuffer buffer) {
+        return fromByteBuffer(buffer, 0, 0);
+    }
+
+    @Override
+    @NotNull
+    public Packet fromByteBuffer(@NotNull ByteBuffer buffer, long expectedSeqNumber, long expectedAckNumber) {
+        if (buffer.get(buffer.position()) == Packet.BUNDLE) throw new IllegalArgumentException("Bundle in place of a packet");
+        return decodeSingle(buffer, expectedSeqNumber, expectedAckNumber);
+    }
+
+    @Override
+    public void fromByteBuffer(@NotNull ByteBuffer buffer, long expectedSeqNumber, long expectedAckNumber, @NotNull List<Packet> out) {
+        if (buffer.get(buffer.position()) != Packet.BUNDLE) {
+            out.add(decodeSingle(buffer, expectedSeqNumber, expectedAckNumber));
+            return;
+        }
+        buffer.get();
+        unbundle(buffer, expectedSeqNumber, expectedAckNumber, out);
+    }
+
+    // The packets are decoded from a copy, so none of them holds on to the datagram buffer.
+    private static void unbundle(@NotNull ByteBuffer buffer, long expectedSeqNumber, long expectedAckNumber, @NotNull List<Packet> out) {
+        var copy = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+        while (copy.hasRemaining()) {
+            if (copy.remaining() < Short.BYTES) throw new IllegalArgumentException("Truncated bundle");
+            int length = Short.toUnsignedInt(copy.getShort());
+            if (length == 0 || length > copy.remaining()) throw new IllegalArgumentException("Truncated bundle");
+            out.add(decodeSingle(copy.slice(copy.position(), length), expectedSeqNumber, expectedAckNumber));
+            copy.position(copy.position() + length);
+        }
+    }
+
+    @NotNull
+    private static Packet decodeSingle(@NotNull ByteBuffer buffer, long expectedSeqNumber, long expectedAckNumber) {
         byte type = buffer.get();
-        var constructor = CONSTRUCTORS.get(type);
-        if (constructor == null) throw new IllegalArgumentException("Unknown packet type: " + type);
-        return constructor.apply(buffer);
+        if ((type & Packet.COMPRESSED) != 0) {
+            buffer = inflate(buffer);
+            type &= ~Packet.COMPRESSED;
+        }
+        if ((type & Packet.COMPACT) != 0)
+            return decodeCompact((byte) (type & ~Packet.COMPACT), buffer, expectedSeqNumber, expectedAckNumber);
+        return switch (type) {
+            case SynPacket.TYPE -> new SynPacket(buffer);
+            case SynAckPacket.TYPE -> new SynAckPacket(buffer);
+            case DataPacket.TYPE -> new DataPacket(buffer);
+            case AckPacket.TYPE -> new AckPacket(buffer);
+            case FinPacket.TYPE -> new FinPacket(buffer);
+            case FinAckPacket.TYPE -> new FinAckPacket(buffer);
+            case SackPacket.TYPE -> new SackPacket(buffer);
+            case DataAckPacket.TYPE -> new DataAckPacket(buffer);
+            case ProbePacket.TYPE -> new ProbePacket(buffer);
+            case ProbeAckPacket.TYPE -> new ProbeAckPacket(buffer);
+            case StreamWindowPacket.TYPE -> new StreamWindowPacket(buffer);
+            case ParityPacket.TYPE -> checkParity(new ParityPacket(buffer));
+            default -> throw new IllegalArgumentException("Unknown packet type: " + type);
+        };
+    }
+
+    // The counterpart of the compact layout in BasicPacketEncoder. Control packets carry no sequence number
+    // and are given the expected one.
+    @NotNull
+    private static Packet decodeCompact(byte type, @NotNull ByteBuffer buffer, long expectedSeqNumber, long expectedAckNumber) {
+        return switch (type) {
+            case DataPacket.TYPE -> DataPacket.wrap(expand(buffer.getInt(), expectedSeqNumber), buffer);
+            case DataAckPacket.TYPE -> {
+                long seqNumber = expand(buffer.getInt(), expectedSeqNumber);
+                long ackNumber = expand(buffer.getInt(), expectedAckNumber);
+                int window = VarInt.getInt(buffer) - 1;
+                yield new DataAckPacket(DataPacket.wrap(seqNumber, buffer), ackNumber, window);
+            }
+            case ParityPacket.TYPE -> {
+                long seqNumber = expand(buffer.getInt(), expectedSeqNumber);
+                int count = VarInt.getInt(buffer);
+                int lengthXor = VarInt.getInt(buffer);
+                yield checkParity(new ParityPacket(seqNumber, count, lengthXor, buffer));
+            }
+            case AckPacket.TYPE -> {
+                long ackNumber = expand(buffer.getInt(), expectedAckNumber);
+                yield new AckPacket(expectedSeqNumber, ackNumber, VarInt.getInt(buffer) - 1);
+            }
+            case SackPacket.TYPE -> {
+                long ackNumber = expand(buffer.getInt(), expectedAckNumber);
+                int window = VarInt.getInt(buffer) - 1;
+                int blockCount = Byte.toUnsignedInt(buffer.get());
+                if (blockCount > SackPacket.MAX_BLOCKS) throw new IllegalArgumentException("Too many SACK blocks: " + blockCount);
+                int[] blocks = new int[blockCount * 2];
+                for (int i = 0; i < blocks.length; ++i) blocks[i] = VarInt.getInt(buffer);
+                yield new SackPacket(expectedSeqNumber, ackNumber, window, blocks, blockCount);
+            }
+            case FinPacket.TYPE -> new FinPacket(expectedSeqNumber);
+            case FinAckPacket.TYPE -> new FinAckPacket(expectedSeqNumber);
+            case StreamWindowPacket.TYPE -> {
+                int streamId = VarInt.getInt(buffer);
+                yield new StreamWindowPacket(expectedSeqNumber, streamId, VarInt.get(buffer));
+            }
+            default -> throw new IllegalArgumentException("Unknown compact packet type: " + type);
+        };
+    }
+
+    // The receiver looks up the group members in a bounded history and rebuilds into a data packet sized buffer.
+    @NotNull
+    private static ParityPacket checkParity(@NotNull ParityPacket parity) {
+        if (parity.getCount() < 1 || parity.getCount() > ParityPacket.MAX_COUNT)
+            throw new CorruptedPacketException("Invalid parity group size: " + parity.getCount());
+        if (parity.getLength() > ParityPacket.MAX_LENGTH)
+            throw new CorruptedPacketException("Parity packet too long: " + parity.getLength());
+        return parity;
+    }
+
+    // The number nearest to the expected one whose low 32 bits match.
+    private static long expand(int truncated, long expected) {
+        return expected + (truncated - (int) expected);
+    }
+
+    // The inflated packet no longer refers to the datagram it arrived in.
+    @NotNull
+    private static ByteBuffer inflate(@NotNull ByteBuffer buffer) {
+        var inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(buffer);
+        byte[] output = INFLATE_BUFFER.get();
+        int length;
+        try {
+            length = inflater.inflate(output);
+        } catch (DataFormatException e) {
+            throw new CorruptedPacketException(e.getMessage());
+        }
+        if (!inflater.finished()) throw new CorruptedPacketException("Compressed packet too large");
+        buffer.position(buffer.limit());
+        return ByteBuffer.wrap(Arrays.copyOf(output, length));
     }
 }
@@ -0,0 +1,24 @@
+package org.softstar.stp.network.decoder;
+
+import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.network.packet.Features;
+
+import java.util.zip.Checksum;
+
+public class CRC32CPacketDecoder extends CRC32PacketDecoder {
+    @Override
+    protected @NotNull Checksum checksum() {
+        return CRC32C_CHECKSUM.get();
+    }
+
+    @Override
+    protected @NotNull Checksum fallbackChecksum() {
+        return CRC32_CHECKSUM.get();
+    }
+
+    @Override
+    public @NotNull AbstractPacketDecoder negotiate(int features) {
+        if ((features & Features.CRC32C) == 0) return new CRC32PacketDecoder();
+        return this;
+    }
+}
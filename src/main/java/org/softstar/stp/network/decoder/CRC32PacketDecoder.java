@@ -2,19 +2,65 @@ package org.softstar.stp.network.decoder;
 
 import org.jetbrains.annotations.NotNull;
 import org.softstar.stp.exception.CorruptedPacketException;
+import org.softstar.stp.network.packet.Features;
 import org.softstar.stp.network.packet.Packet;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
 
 public class CRC32PacketDecoder extends BasicPacketDecoder {
+    protected static final ThreadLocal<CRC32> CRC32_CHECKSUM = ThreadLocal.withInitial(CRC32::new);
+    protected static final ThreadLocal<CRC32C> CRC32C_CHECKSUM = ThreadLocal.withInitial(CRC32C::new);
+
+    @NotNull
+    protected Checksum checksum() {
+        return CRC32_CHECKSUM.get();
+    }
+
+    // Packets sent around the handshake may still use the other algorithm.
+    @NotNull
+    protected Checksum fallbackChecksum() {
+        return CRC32C_CHECKSUM.get();
+    }
+
+    @Override
+    public int getSupportedFeatures() {
+        return super.getSupportedFeatures() | Features.CRC32C;
+    }
+
+    @Override
+    public @NotNull AbstractPacketDecoder negotiate(int features) {
+        if ((features & Features.CRC32C) != 0) return new CRC32CPacketDecoder();
+        return this;
+    }
+
+    @Override
+    public @NotNull Packet fromByteBuffer(@NotNull ByteBuffer buffer, long expectedSeqNumber, long expectedAckNumber) {
+        verify(buffer);
+        return super.fromByteBuffer(buffer, expectedSeqNumber, expectedAckNumber);
+    }
+
     @Override
-    public @NotNull Packet fromByteBuffer(@NotNull ByteBuffer buffer) {
-        int crc32 = buffer.getInt();
-        CRC32 crc = new CRC32();
-        crc.update(buffer);
-        if (crc32 != (int) crc.getValue()) throw new CorruptedPacketException();
-        buffer.position(4);
-        return super.fromByteBuffer(buffer);
+    public void fromByteBuffer(@NotNull ByteBuffer buffer, long expectedSeqNumber, long expectedAckNumber, @NotNull List<Packet> out) {
+        verify(buffer);
+        super.fromByteBuffer(buffer, expectedSeqNumber, expectedAckNumber, out);
+    }
+
+    // Leaves the buffer at the packet body.
+    private void verify(@NotNull ByteBuffer buffer) {
+        int body = buffer.position() + Integer.BYTES;
+        int expected = buffer.getInt();
+        if (!verify(checksum(), buffer, body, expected) && !verify(fallbackChecksum(), buffer, body, expected))
+            throw new CorruptedPacketException();
+    }
+
+    private static boolean verify(Checksum checksum, ByteBuffer buffer, int body, int expected) {
+        checksum.reset();
+        checksum.update(buffer);
+        buffer.position(body);
+        return (int) checksum.getValue() == expected;
     }
 }
@@ -1,9 +1,11 @@
 package org.softstar.stp.network.encoder;
 
 import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.network.packet.DataPacket;
 import org.softstar.stp.network.packet.Packet;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 
 public abstract class AbstractPacketEncoder {
     public byte[] toBytes(@NotNull Packet packet) {
@@ -15,5 +17,45 @@ public abstract class AbstractPacketEncoder {
     }
 
     @NotNull
-    public abstract ByteBuffer toByteBuffer(@NotNull Packet packet);
+    public ByteBuffer toByteBuffer(@NotNull Packet packet) {
+        var buffer = ByteBuffer.allocate(getEncodedLength(packet));
+        encode(packet, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    public int getSupportedFeatures() {
+        return 0;
+    }
+
+    @NotNull
+    public AbstractPacketEncoder negotiate(int features) {
+        return this;
+    }
+
+    public abstract int getEncodedLength(@NotNull Packet packet);
+
+    public abstract int getEncodedLength(@NotNull List<Packet> packets);
+
+    // Bytes the packet adds to a bundle, an upper bound is enough.
+    public int getBundledLength(@NotNull Packet packet) {
+        return Short.BYTES + Byte.BYTES + packet.getSerializedLength();
+    }
+
+    public abstract void encode(@NotNull Packet packet, @NotNull ByteBuffer out);
+
+    // Encodes the packets into a single datagram of type Packet.BUNDLE.
+    public abstract void encode(@NotNull List<Packet> packets, @NotNull ByteBuffer out);
+
+    // Bytes the encoding puts in front of the payload of a data packet, or -1 when the payload does not go
+    // out unchanged. A payload with that much room in front of it can be encoded where it is.
+    public int getPayloadOffset(@NotNull DataPacket packet) {
+        return -1;
+    }
+
+    // For a bundle the packet is the first one in it.
+    @NotNull
+    public ByteBuffer beforeSend(@NotNull Packet packet, @NotNull ByteBuffer datagram) {
+        return datagram;
+    }
 }
@@ -2,30 +2,231 @@ package org.softstar.stp.network.encoder;
 
 import org.jetbrains.annotations.NotNull;
 import org.softstar.stp.network.packet.*;
+import org.softstar.stp.utils.VarInt;
 
 import java.nio.ByteBuffer;
-import java.util.Map;
+import java.util.List;
+import java.util.zip.Deflater;
 
 public class BasicPacketEncoder extends AbstractPacketEncoder {
-    private static final Map<Class<? extends Packet>, Byte> TYPES = Map.of(
-            SynPacket.class, SynPacket.TYPE,
-            SynAckPacket.class, SynAckPacket.TYPE,
-            DataPacket.class, DataPacket.TYPE,
-            AckPacket.class, AckPacket.TYPE,
-            FinPacket.class, FinPacket.TYPE,
-            FinAckPacket.class, FinAckPacket.TYPE
-    );
-
-    @Override
-    public @NotNull ByteBuffer toByteBuffer(@NotNull Packet packet) {
-        Byte type = TYPES.get(packet.getClass());
-        if (type == null)
-            throw new IllegalArgumentException(String.format("Packet %s is not supported", packet.getClass()));
-        var res = ByteBuffer.allocate(65535);
-        res.put(type);
-        packet.serialize(res);
-        res.limit(res.position());
-        res.rewind();
-        return res;
+    private static final int MIN_COMPRESSED_LENGTH = 128;
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<byte[]> COMPRESS_BUFFER = ThreadLocal.withInitial(() -> new byte[1 << 16]);
+
+    protected final int compressionLevel;
+    protected final boolean compressing;
+    protected final boolean compact;
+
+    public BasicPacketEncoder() {
+        this(Deflater.NO_COMPRESSION);
+    }
+
+    // A deflate level from 1 (fastest) to 9, or 0 to never compress. Compression is only used when the peer
+    // supports it as well.
+    public BasicPacketEncoder(int compressionLevel) {
+        this(compressionLevel, false, false);
+    }
+
+    protected BasicPacketEncoder(int compressionLevel, boolean compressing, boolean compact) {
+        if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Compression level must be between 0 and 9");
+        this.compressionLevel = compressionLevel;
+        this.compressing = compressing;
+        this.compact = compact;
+    }
+
+    @Override
+    public int getSupportedFeatures() {
+        int features = Features.SACK | Features.DATA_ACK | Features.PMTUD | Features.BUNDLE | Features.COMPACT;
+        if (compressionLevel != Deflater.NO_COMPRESSION) features |= Features.COMPRESSION;
+        return features;
+    }
+
+    @Override
+    public @NotNull AbstractPacketEncoder negotiate(int features) {
+        if (isNegotiated(features)) return this;
+        return new BasicPacketEncoder(compressionLevel, shouldCompress(features), shouldCompact(features));
+    }
+
+    protected boolean isNegotiated(int features) {
+        return shouldCompress(features) == compressing && shouldCompact(features) == compact;
+    }
+
+    protected boolean shouldCompress(int features) {
+        return compressionLevel != Deflater.NO_COMPRESSION && (features & Features.COMPRESSION) != 0;
+    }
+
+    protected static boolean shouldCompact(int features) {
+        return (features & Features.COMPACT) != 0;
+    }
+
+    // Compression only ever shrinks a packet, so this stays an upper bound.
+    @Override
+    public int getEncodedLength(@NotNull Packet packet) {
+        return getSingleLength(packet);
+    }
+
+    @Override
+    public int getEncodedLength(@NotNull List<Packet> packets) {
+        int length = Byte.BYTES;
+        for (var packet : packets) length += Short.BYTES + getSingleLength(packet);
+        return length;
+    }
+
+    @Override
+    public int getBundledLength(@NotNull Packet packet) {
+        return Short.BYTES + getSingleLength(packet);
+    }
+
+    // Compression rewrites the payload, it has to be encoded into a buffer of its own then.
+    @Override
+    public int getPayloadOffset(@NotNull DataPacket packet) {
+        if (compressing) return -1;
+        return getSingleLength(packet) - packet.getLength();
+    }
+
+    private int getSingleLength(@NotNull Packet packet) {
+        if (compact && hasCompactForm(packet)) return Byte.BYTES + getCompactLength(packet);
+        return Byte.BYTES + packet.getSerializedLength();
+    }
+
+    @Override
+    public void encode(@NotNull Packet packet, @NotNull ByteBuffer out) {
+        encodeSingle(packet, out);
+    }
+
+    @Override
+    public void encode(@NotNull List<Packet> packets, @NotNull ByteBuffer out) {
+        out.put(Packet.BUNDLE);
+        for (var packet : packets) {
+            int start = out.position();
+            out.position(start + Short.BYTES);
+            encodeSingle(packet, out);
+            out.putShort(start, (short) (out.position() - start - Short.BYTES));
+        }
+    }
+
+    private void encodeSingle(@NotNull Packet packet, @NotNull ByteBuffer out) {
+        byte type = getType(packet);
+        int start = out.position();
+        if (compact && hasCompactForm(packet)) {
+            out.put((byte) (type | Packet.COMPACT));
+            serializeCompact(packet, out);
+        } else {
+            out.put(type);
+            packet.serialize(out);
+        }
+        if (compressing && packet instanceof DataPacket && out.position() - start > MIN_COMPRESSED_LENGTH)
+            compress(out, start);
+    }
+
+    // Subclasses come before the classes they extend.
+    protected static byte getType(@NotNull Packet packet) {
+        return switch (packet) {
+            case SynPacket _ -> SynPacket.TYPE;
+            case SynAckPacket _ -> SynAckPacket.TYPE;
+            case ParityPacket _ -> ParityPacket.TYPE;
+            case DataAckPacket _ -> DataAckPacket.TYPE;
+            case DataPacket _ -> DataPacket.TYPE;
+            case SackPacket _ -> SackPacket.TYPE;
+            case AckPacket _ -> AckPacket.TYPE;
+            case FinPacket _ -> FinPacket.TYPE;
+            case FinAckPacket _ -> FinAckPacket.TYPE;
+            case ProbePacket _ -> ProbePacket.TYPE;
+            case ProbeAckPacket _ -> ProbeAckPacket.TYPE;
+            case StreamWindowPacket _ -> StreamWindowPacket.TYPE;
+            default -> throw new IllegalArgumentException(String.format("Packet %s is not supported", packet.getClass()));
+        };
+    }
+
+    // The handshake establishes the sequence numbers and so carries them in full, probes are padded anyway.
+    protected static boolean hasCompactForm(@NotNull Packet packet) {
+        return !(packet instanceof SynPacket || packet instanceof SynAckPacket
+                || packet instanceof ProbePacket || packet instanceof ProbeAckPacket);
+    }
+
+    // Sequence and ack numbers are cut to their low 32 bits, the decoder expands them against the numbers it
+    // expects. Other fields are varints, windows are sent plus one so that an unknown window is a single byte.
+    // Control packets carry no sequence number at all.
+    private static int getCompactLength(@NotNull Packet packet) {
+        return switch (packet) {
+            case ParityPacket parity -> Integer.BYTES + VarInt.length(parity.getCount())
+                    + VarInt.length(parity.getLengthXor()) + parity.getLength();
+            case DataAckPacket data -> Integer.BYTES + Integer.BYTES + VarInt.length(data.getWindow() + 1) + data.getLength();
+            case DataPacket data -> Integer.BYTES + data.getLength();
+            case SackPacket sack -> {
+                int length = Integer.BYTES + VarInt.length(sack.getWindow() + 1) + Byte.BYTES;
+                for (int i = 0; i < sack.getBlockCount(); ++i) {
+                    length += VarInt.length((int) (sack.getBlockStart(i) - sack.getAckNumber()));
+                    length += VarInt.length((int) (sack.getBlockEnd(i) - sack.getAckNumber()));
+                }
+                yield length;
+            }
+            case AckPacket ack -> Integer.BYTES + VarInt.length(ack.getWindow() + 1);
+            case StreamWindowPacket window -> VarInt.length(window.getStreamId()) + VarInt.length(window.getLimit());
+            default -> 0;
+        };
+    }
+
+    private static void serializeCompact(@NotNull Packet packet, @NotNull ByteBuffer out) {
+        switch (packet) {
+            case ParityPacket parity -> {
+                out.putInt((int) parity.getSeqNumber());
+                VarInt.putInt(out, parity.getCount());
+                VarInt.putInt(out, parity.getLengthXor());
+                putPayload(parity, out);
+            }
+            case DataAckPacket data -> {
+                out.putInt((int) data.getSeqNumber());
+                out.putInt((int) data.getAckNumber());
+                VarInt.putInt(out, data.getWindow() + 1);
+                putPayload(data, out);
+            }
+            case DataPacket data -> {
+                out.putInt((int) data.getSeqNumber());
+                putPayload(data, out);
+            }
+            case SackPacket sack -> {
+                out.putInt((int) sack.getAckNumber());
+                VarInt.putInt(out, sack.getWindow() + 1);
+                out.put((byte) sack.getBlockCount());
+                for (int i = 0; i < sack.getBlockCount(); ++i) {
+                    VarInt.putInt(out, (int) (sack.getBlockStart(i) - sack.getAckNumber()));
+                    VarInt.putInt(out, (int) (sack.getBlockEnd(i) - sack.getAckNumber()));
+                }
+            }
+            case AckPacket ack -> {
+                out.putInt((int) ack.getAckNumber());
+                VarInt.putInt(out, ack.getWindow() + 1);
+            }
+            case StreamWindowPacket window -> {
+                VarInt.putInt(out, window.getStreamId());
+                VarInt.put(out, window.getLimit());
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static void putPayload(@NotNull DataPacket data, @NotNull ByteBuffer out) {
+        data.putPayload(out);
+    }
+
+    // Replaces the packet body with its deflated form, unless that would not make it smaller.
+    private void compress(@NotNull ByteBuffer out, int start) {
+        int body = start + Byte.BYTES;
+        int length = out.position() - body;
+        var deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setLevel(compressionLevel);
+        deflater.setInput(out.slice(body, length));
+        deflater.finish();
+        byte[] buffer = COMPRESS_BUFFER.get();
+        int compressed = deflater.deflate(buffer, 0, Math.min(length - 1, buffer.length));
+        if (!deflater.finished()) return;
+
+        out.put(start, (byte) (out.get(start) | Packet.COMPRESSED));
+        out.put(body, buffer, 0, compressed);
+        out.position(body + compressed);
     }
 }
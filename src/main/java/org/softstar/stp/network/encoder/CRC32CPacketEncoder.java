@@ -0,0 +1,34 @@
+package org.softstar.stp.network.encoder;
+
+import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.network.packet.Features;
+
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+public class CRC32CPacketEncoder extends CRC32PacketEncoder {
+    private static final ThreadLocal<CRC32C> CHECKSUM = ThreadLocal.withInitial(CRC32C::new);
+
+    public CRC32CPacketEncoder() {
+    }
+
+    public CRC32CPacketEncoder(int compressionLevel) {
+        super(compressionLevel);
+    }
+
+    protected CRC32CPacketEncoder(int compressionLevel, boolean compressing, boolean compact) {
+        super(compressionLevel, compressing, compact);
+    }
+
+    @Override
+    protected @NotNull Checksum checksum() {
+        return CHECKSUM.get();
+    }
+
+    @Override
+    public @NotNull AbstractPacketEncoder negotiate(int features) {
+        if ((features & Features.CRC32C) == 0) return new CRC32PacketEncoder(compressionLevel, shouldCompress(features), shouldCompact(features));
+        if (isNegotiated(features)) return this;
+        return new CRC32CPacketEncoder(compressionLevel, shouldCompress(features), shouldCompact(features));
+    }
+}
@@ -1,23 +1,87 @@
 package org.softstar.stp.network.encoder;
 
 import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.network.packet.DataPacket;
+import org.softstar.stp.network.packet.Features;
 import org.softstar.stp.network.packet.Packet;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.zip.CRC32;
+import java.util.zip.Checksum;
 
 public class CRC32PacketEncoder extends BasicPacketEncoder {
+    private static final ThreadLocal<CRC32> CHECKSUM = ThreadLocal.withInitial(CRC32::new);
+
+    public CRC32PacketEncoder() {
+    }
+
+    public CRC32PacketEncoder(int compressionLevel) {
+        super(compressionLevel);
+    }
+
+    protected CRC32PacketEncoder(int compressionLevel, boolean compressing, boolean compact) {
+        super(compressionLevel, compressing, compact);
+    }
+
+    @NotNull
+    protected Checksum checksum() {
+        return CHECKSUM.get();
+    }
+
+    @Override
+    public int getSupportedFeatures() {
+        return super.getSupportedFeatures() | Features.CRC32C;
+    }
+
+    @Override
+    public @NotNull AbstractPacketEncoder negotiate(int features) {
+        if ((features & Features.CRC32C) != 0) return new CRC32CPacketEncoder(compressionLevel, shouldCompress(features), shouldCompact(features));
+        if (isNegotiated(features)) return this;
+        return new CRC32PacketEncoder(compressionLevel, shouldCompress(features), shouldCompact(features));
+    }
+
     @Override
-    public @NotNull ByteBuffer toByteBuffer(@NotNull Packet packet) {
-        var encoded = super.toByteBuffer(packet);
-        CRC32 crc32 = new CRC32();
-        crc32.update(encoded);
-        encoded.rewind();
-        var res = ByteBuffer.allocate(65535);
-        res.putInt((int) crc32.getValue());
-        res.put(encoded);
-        res.limit(res.position());
-        res.rewind();
-        return res;
+    public int getEncodedLength(@NotNull Packet packet) {
+        return Integer.BYTES + super.getEncodedLength(packet);
+    }
+
+    @Override
+    public int getEncodedLength(@NotNull List<Packet> packets) {
+        return Integer.BYTES + super.getEncodedLength(packets);
+    }
+
+    @Override
+    public int getPayloadOffset(@NotNull DataPacket packet) {
+        int offset = super.getPayloadOffset(packet);
+        return offset < 0 ? offset : Integer.BYTES + offset;
+    }
+
+    @Override
+    public void encode(@NotNull Packet packet, @NotNull ByteBuffer out) {
+        int start = out.position();
+        out.position(start + Integer.BYTES);
+        super.encode(packet, out);
+        putChecksum(out, start);
+    }
+
+    // The packets of a bundle are framed by the encoder above, which does not checksum each of them.
+    @Override
+    public void encode(@NotNull List<Packet> packets, @NotNull ByteBuffer out) {
+        int start = out.position();
+        out.position(start + Integer.BYTES);
+        super.encode(packets, out);
+        putChecksum(out, start);
+    }
+
+    private void putChecksum(@NotNull ByteBuffer out, int start) {
+        int end = out.position();
+        int limit = out.limit();
+        out.limit(end).position(start + Integer.BYTES);
+        var checksum = checksum();
+        checksum.reset();
+        checksum.update(out);
+        out.limit(limit);
+        out.putInt(start, (int) checksum.getValue());
     }
 }
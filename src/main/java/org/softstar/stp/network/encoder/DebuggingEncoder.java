@@ -1,6 +1,7 @@
 package org.softstar.stp.network.encoder;
 
 import org.jetbrains.annotations.NotNull;
+import org.softstar.stp.network.packet.Features;
 import org.softstar.stp.network.packet.Packet;
 
 import java.nio.ByteBuffer;
@@ -15,19 +16,45 @@ public class DebuggingEncoder extends CRC32PacketEncoder {
         this.byteCorruptRate = byteCorruptRate;
     }
 
+    protected DebuggingEncoder(String name, double byteCorruptRate, int compressionLevel, boolean compressing, boolean compact) {
+        super(compressionLevel, compressing, compact);
+        this.name = name;
+        this.byteCorruptRate = byteCorruptRate;
+    }
+
+    @Override
+    public int getSupportedFeatures() {
+        return super.getSupportedFeatures() & ~Features.CRC32C;
+    }
+
     @Override
-    public @NotNull ByteBuffer toByteBuffer(@NotNull Packet packet) {
-        ByteBuffer res = super.toByteBuffer(packet);
-        boolean overallCorrupt = false;
-        byte[] buf = new byte[1];
-        for (int i = 0; i < res.limit(); ++i) {
-            boolean corrupt = ThreadLocalRandom.current().nextDouble() <= byteCorruptRate;
-            if (!corrupt) continue;
-            overallCorrupt = true;
-            ThreadLocalRandom.current().nextBytes(buf);
-            res.put(i, buf[0]);
+    public @NotNull AbstractPacketEncoder negotiate(int features) {
+        if (isNegotiated(features)) return this;
+        return new DebuggingEncoder(name, byteCorruptRate, compressionLevel, shouldCompress(features), shouldCompact(features));
+    }
+
+    @Override
+    public @NotNull ByteBuffer beforeSend(@NotNull Packet packet, @NotNull ByteBuffer datagram) {
+        int length = datagram.remaining();
+        long index = nextCorruptDistance();
+        if (index >= length) return datagram;
+
+        // Corrupt a copy, the datagram may be a cached encoding that is sent again on retransmission.
+        var res = ByteBuffer.allocate(length);
+        res.put(datagram.duplicate());
+        res.flip();
+        while (index < length) {
+            res.put((int) index, (byte) ThreadLocalRandom.current().nextInt(256));
+            index += 1 + nextCorruptDistance();
         }
-        if (overallCorrupt) System.out.printf("[%s] corrupt packet: %s%n", name, packet);
+        System.out.printf("[%s] corrupt packet: %s%n", name, packet);
         return res;
     }
+
+    private long nextCorruptDistance() {
+        if (byteCorruptRate >= 1) return 0;
+        if (byteCorruptRate <= 0) return Integer.MAX_VALUE;
+        double random = ThreadLocalRandom.current().nextDouble();
+        return (long) Math.min(Integer.MAX_VALUE, Math.floor(Math.log1p(-random) / Math.log1p(-byteCorruptRate)));
+    }
 }
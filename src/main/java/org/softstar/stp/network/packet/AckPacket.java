@@ -5,27 +5,46 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.ByteBuffer;
 
 public class AckPacket extends Packet {
-    public static byte TYPE = 0x04;
+    public static final byte TYPE = 0x04;
+    public static final int UNKNOWN_WINDOW = -1;
 
     private final long ackNumber;
+    private final int window;
 
     public AckPacket(long seqNumber, long ackNumber) {
+        this(seqNumber, ackNumber, UNKNOWN_WINDOW);
+    }
+
+    public AckPacket(long seqNumber, long ackNumber, int window) {
         super(seqNumber);
         this.ackNumber = ackNumber;
+        this.window = window;
     }
 
     public AckPacket(ByteBuffer buffer) {
         super(buffer);
         this.ackNumber = buffer.getLong();
+        this.window = buffer.remaining() >= Integer.BYTES ? buffer.getInt() : UNKNOWN_WINDOW;
+    }
+
+    @Override
+    public int getSerializedLength() {
+        return super.getSerializedLength() + Long.BYTES + Integer.BYTES;
     }
 
     @Override
     public void serialize(@NotNull ByteBuffer out) {
         super.serialize(out);
         out.putLong(getAckNumber());
+        out.putInt(getWindow());
     }
 
     public long getAckNumber() {
         return ackNumber;
     }
+
+    // Number of packets past the ack number the receiver can buffer.
+    public int getWindow() {
+        return window;
+    }
 }
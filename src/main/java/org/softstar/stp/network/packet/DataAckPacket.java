@@ -0,0 +1,45 @@
+package org.softstar.stp.network.packet;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+public class DataAckPacket extends DataPacket {
+    public static final byte TYPE = 0x08;
+    private static final int HEADER_LENGTH = Long.BYTES + Integer.BYTES;
+
+    private final long ackNumber;
+    private final int window;
+
+    public DataAckPacket(@NotNull DataPacket data, long ackNumber, int window) {
+        super(data);
+        this.ackNumber = ackNumber;
+        this.window = window;
+    }
+
+    public DataAckPacket(ByteBuffer buffer) {
+        super(buffer, HEADER_LENGTH);
+        this.ackNumber = buffer.getLong();
+        this.window = buffer.getInt();
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    protected int getHeaderLength() {
+        return HEADER_LENGTH;
+    }
+
+    @Override
+    protected void serializeHeader(@NotNull ByteBuffer out) {
+        out.putLong(getAckNumber());
+        out.putInt(getWindow());
+    }
+
+    public long getAckNumber() {
+        return ackNumber;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+}
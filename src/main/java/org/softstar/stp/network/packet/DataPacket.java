@@ -1,14 +1,21 @@
 package org.softstar.stp.network.packet;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.softstar.stp.utils.BufferPool;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class DataPacket extends Packet {
-    public static byte TYPE = 0x03;
+    public static final byte TYPE = 0x03;
 
-    private final byte[] data;
+    private final ByteBuffer payload;
+    private ByteBuffer encoded = null;
+    private BufferPool pool = null;
+    private ByteBuffer pooledBuffer = null;
+    private ByteBuffer headroomBuffer = null;
+    private int headroom = 0;
 
     public DataPacket(long seqNumber, byte[] data) {
         this(seqNumber, data, data.length);
@@ -16,22 +23,123 @@ public class DataPacket extends Packet {
 
     public DataPacket(long seqNumber, byte[] data, int length) {
         super(seqNumber);
-        this.data = Arrays.copyOf(data, length);
+        this.payload = ByteBuffer.wrap(Arrays.copyOf(data, length)).asReadOnlyBuffer();
+    }
+
+    // Takes the array over without copying, it must not be modified afterwards.
+    @NotNull
+    public static DataPacket wrap(long seqNumber, byte[] payload) {
+        return new DataPacket(seqNumber, ByteBuffer.wrap(payload));
+    }
+
+    // The payload is the remaining part of the buffer, it is shared rather than copied.
+    @NotNull
+    public static DataPacket wrap(long seqNumber, @NotNull ByteBuffer payload) {
+        return new DataPacket(seqNumber, payload);
+    }
+
+    // The payload follows headroom free bytes at the start of the buffer, an encoder may write the header
+    // there so that the payload is sent without being copied. The buffer is taken over like in wrap.
+    @NotNull
+    public static DataPacket wrap(long seqNumber, @NotNull ByteBuffer buffer, int headroom) {
+        var packet = new DataPacket(seqNumber, buffer.slice(headroom, buffer.limit() - headroom));
+        packet.headroomBuffer = buffer;
+        packet.headroom = headroom;
+        return packet;
+    }
+
+    protected DataPacket(long seqNumber, @NotNull ByteBuffer payload) {
+        super(seqNumber);
+        this.payload = payload.asReadOnlyBuffer();
+    }
+
+    // Shares the payload of another packet, along with the room in front of it.
+    protected DataPacket(@NotNull DataPacket data) {
+        this(data.getSeqNumber(), data.payload);
+        this.headroomBuffer = data.headroomBuffer;
+        this.headroom = data.headroom;
     }
 
     public DataPacket(ByteBuffer buffer) {
+        this(buffer, 0);
+        buffer.position(buffer.limit());
+    }
+
+    // Leaves the buffer positioned at the start of the subclass header.
+    protected DataPacket(ByteBuffer buffer, int headerLength) {
         super(buffer);
-        this.data = new byte[buffer.remaining()];
-        buffer.get(getData());
+        int offset = buffer.position() + headerLength;
+        this.payload = buffer.slice(offset, buffer.limit() - offset).asReadOnlyBuffer();
+    }
+
+    protected int getHeaderLength() {
+        return 0;
+    }
+
+    protected void serializeHeader(@NotNull ByteBuffer out) {
+    }
+
+    @Override
+    public int getSerializedLength() {
+        return super.getSerializedLength() + getHeaderLength() + payload.remaining();
     }
 
     @Override
     public void serialize(@NotNull ByteBuffer out) {
         super.serialize(out);
-        out.put(getData());
+        serializeHeader(out);
+        putPayload(out);
+    }
+
+    // Skips the copy when out is the buffer the payload was wrapped in and the header ended right before it.
+    public void putPayload(@NotNull ByteBuffer out) {
+        int length = payload.remaining();
+        if (out != headroomBuffer || out.position() != headroom)
+            out.put(out.position(), payload, payload.position(), length);
+        out.position(out.position() + length);
     }
 
     public byte[] getData() {
+        byte[] data = new byte[payload.remaining()];
+        payload.get(payload.position(), data);
         return data;
     }
+
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+
+    public int getLength() {
+        return payload.remaining();
+    }
+
+    @Nullable
+    public ByteBuffer getEncoded() {
+        return encoded;
+    }
+
+    public void setEncoded(@Nullable ByteBuffer encoded) {
+        this.encoded = encoded;
+    }
+
+    @Nullable
+    public ByteBuffer getHeadroomBuffer() {
+        return headroomBuffer;
+    }
+
+    public int getHeadroom() {
+        return headroom;
+    }
+
+    public void attach(@NotNull BufferPool pool, @NotNull ByteBuffer buffer) {
+        this.pool = pool;
+        this.pooledBuffer = buffer;
+    }
+
+    public void release() {
+        if (pool == null) return;
+        pool.release(pooledBuffer);
+        pool = null;
+        pooledBuffer = null;
+    }
 }
@@ -0,0 +1,16 @@
+package org.softstar.stp.network.packet;
+
+public final class Features {
+    public static final int CRC32C = 0x01;
+    public static final int SACK = 0x02;
+    public static final int DATA_ACK = 0x04;
+    public static final int PMTUD = 0x08;
+    public static final int STREAMS = 0x10;
+    public static final int PARITY = 0x20;
+    public static final int COMPRESSION = 0x40;
+    public static final int BUNDLE = 0x80;
+    public static final int COMPACT = 0x100;
+
+    private Features() {
+    }
+}
@@ -5,7 +5,7 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.ByteBuffer;
 
 public class FinAckPacket extends Packet {
-    public static byte TYPE = 0x06;
+    public static final byte TYPE = 0x06;
 
     public FinAckPacket(long seqNumber) {
         super(seqNumber);
@@ -5,7 +5,7 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.ByteBuffer;
 
 public class FinPacket extends Packet {
-    public static byte TYPE = 0x05;
+    public static final byte TYPE = 0x05;
 
     public FinPacket(long seqNumber) {
         super(seqNumber);
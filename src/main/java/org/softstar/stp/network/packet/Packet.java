@@ -5,6 +5,14 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.ByteBuffer;
 
 public abstract class Packet {
+    // Set in the type byte when everything after it is deflated.
+    public static final byte COMPRESSED = (byte) 0x80;
+    // Set in the type byte when the packet uses the compact layout of the encoder.
+    public static final byte COMPACT = 0x40;
+    // Type of a datagram carrying several packets, each encoded without a checksum and preceded by its 2 byte
+    // length. Only the datagram as a whole is checksummed, and it has no sequence number of its own.
+    public static final byte BUNDLE = 0x0D;
+
     private final long seqNumber;
 
     public Packet(long seqNumber) {
@@ -19,6 +27,10 @@ public abstract class Packet {
         return seqNumber;
     }
 
+    public int getSerializedLength() {
+        return Long.BYTES;
+    }
+
     public void serialize(@NotNull ByteBuffer out) {
         out.putLong(seqNumber);
     }
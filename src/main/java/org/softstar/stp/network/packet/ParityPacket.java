@@ -0,0 +1,54 @@
+package org.softstar.stp.network.packet;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+// XOR of the payloads of count consecutive data packets starting at the sequence number, padded with zeros
+// to the longest of them. The XOR of their lengths recovers the length of a missing one. Never acknowledged.
+public class ParityPacket extends DataPacket {
+    public static final byte TYPE = 0x0C;
+    // A group spans no more packets than a receiver remembers, and its parity is no longer than a data packet.
+    public static final int MAX_COUNT = 64;
+    public static final int MAX_LENGTH = 16384;
+    private static final int HEADER_LENGTH = Integer.BYTES + Integer.BYTES;
+
+    private final int count;
+    private final int lengthXor;
+
+    public ParityPacket(long firstSeqNumber, int count, int lengthXor, byte[] parity) {
+        this(firstSeqNumber, count, lengthXor, ByteBuffer.wrap(parity));
+    }
+
+    public ParityPacket(long firstSeqNumber, int count, int lengthXor, @NotNull ByteBuffer parity) {
+        super(firstSeqNumber, parity);
+        this.count = count;
+        this.lengthXor = lengthXor;
+    }
+
+    public ParityPacket(ByteBuffer buffer) {
+        super(buffer, HEADER_LENGTH);
+        this.count = buffer.getInt();
+        this.lengthXor = buffer.getInt();
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    protected int getHeaderLength() {
+        return HEADER_LENGTH;
+    }
+
+    @Override
+    protected void serializeHeader(@NotNull ByteBuffer out) {
+        out.putInt(getCount());
+        out.putInt(getLengthXor());
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getLengthXor() {
+        return lengthXor;
+    }
+}
@@ -0,0 +1,36 @@
+package org.softstar.stp.network.packet;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+public class ProbeAckPacket extends Packet {
+    public static final byte TYPE = 0x0A;
+
+    private final long probeNumber;
+
+    public ProbeAckPacket(long seqNumber, long probeNumber) {
+        super(seqNumber);
+        this.probeNumber = probeNumber;
+    }
+
+    public ProbeAckPacket(ByteBuffer buffer) {
+        super(buffer);
+        this.probeNumber = buffer.getLong();
+    }
+
+    @Override
+    public int getSerializedLength() {
+        return super.getSerializedLength() + Long.BYTES;
+    }
+
+    @Override
+    public void serialize(@NotNull ByteBuffer out) {
+        super.serialize(out);
+        out.putLong(getProbeNumber());
+    }
+
+    public long getProbeNumber() {
+        return probeNumber;
+    }
+}
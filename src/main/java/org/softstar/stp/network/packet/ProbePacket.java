@@ -0,0 +1,46 @@
+package org.softstar.stp.network.packet;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+// Padded to the datagram size being tested, the payload carries no data.
+public class ProbePacket extends Packet {
+    public static final byte TYPE = 0x09;
+
+    private final long probeNumber;
+    private final int padding;
+
+    public ProbePacket(long seqNumber, long probeNumber, int padding) {
+        super(seqNumber);
+        this.probeNumber = probeNumber;
+        this.padding = padding;
+    }
+
+    public ProbePacket(ByteBuffer buffer) {
+        super(buffer);
+        this.probeNumber = buffer.getLong();
+        this.padding = buffer.remaining();
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public int getSerializedLength() {
+        return super.getSerializedLength() + Long.BYTES + padding;
+    }
+
+    @Override
+    public void serialize(@NotNull ByteBuffer out) {
+        super.serialize(out);
+        out.putLong(getProbeNumber());
+        for (int i = 0; i < padding; ++i) out.put((byte) 0);
+    }
+
+    public long getProbeNumber() {
+        return probeNumber;
+    }
+
+    public int getPadding() {
+        return padding;
+    }
+}
@@ -0,0 +1,52 @@
+package org.softstar.stp.network.packet;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+public class SackPacket extends AckPacket {
+    public static final byte TYPE = 0x07;
+    public static final int MAX_BLOCKS = 16;
+
+    // Pairs of [start, end) offsets relative to the ack number.
+    private final int[] blocks;
+
+    public SackPacket(long seqNumber, long ackNumber, int window, int[] blocks, int blockCount) {
+        super(seqNumber, ackNumber, window);
+        if (blockCount > MAX_BLOCKS) throw new IllegalArgumentException("Too many SACK blocks: " + blockCount);
+        this.blocks = new int[blockCount * 2];
+        System.arraycopy(blocks, 0, this.blocks, 0, this.blocks.length);
+    }
+
+    public SackPacket(ByteBuffer buffer) {
+        super(buffer);
+        int blockCount = Byte.toUnsignedInt(buffer.get());
+        if (blockCount > MAX_BLOCKS) throw new IllegalArgumentException("Too many SACK blocks: " + blockCount);
+        this.blocks = new int[blockCount * 2];
+        for (int i = 0; i < blocks.length; ++i) blocks[i] = buffer.getInt();
+    }
+
+    @Override
+    public int getSerializedLength() {
+        return super.getSerializedLength() + Byte.BYTES + blocks.length * Integer.BYTES;
+    }
+
+    @Override
+    public void serialize(@NotNull ByteBuffer out) {
+        super.serialize(out);
+        out.put((byte) getBlockCount());
+        for (int offset : blocks) out.putInt(offset);
+    }
+
+    public int getBlockCount() {
+        return blocks.length / 2;
+    }
+
+    public long getBlockStart(int index) {
+        return getAckNumber() + blocks[index * 2];
+    }
+
+    public long getBlockEnd(int index) {
+        return getAckNumber() + blocks[index * 2 + 1];
+    }
+}
@@ -0,0 +1,88 @@
+package org.softstar.stp.network.packet;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+// With the streams feature every data payload starts with this header. The connection sequence number
+// only drives acknowledgement, ordering is restored per stream by the stream sequence number.
+public class StreamFrame {
+    public static final int HEADER_LENGTH = Integer.BYTES + Long.BYTES + Byte.BYTES;
+    public static final byte FLAG_FIN = 0x01;
+    // Message frames bypass the streams and are delivered on their own, in arrival order.
+    public static final byte FLAG_MESSAGE = 0x02;
+    public static final byte FLAG_ABANDONED = 0x04;
+
+    private final DataPacket packet;
+    private final int streamId;
+    private final long streamSeq;
+    private final byte flags;
+    private final ByteBuffer data;
+
+    public StreamFrame(@NotNull DataPacket packet) {
+        var payload = packet.getPayload();
+        if (payload.remaining() < HEADER_LENGTH) throw new IllegalArgumentException("Stream frame too short");
+        int offset = payload.position();
+        this.packet = packet;
+        this.streamId = payload.getInt(offset);
+        this.streamSeq = payload.getLong(offset + Integer.BYTES);
+        this.flags = payload.get(offset + Integer.BYTES + Long.BYTES);
+        this.data = payload.slice(offset + HEADER_LENGTH, payload.remaining() - HEADER_LENGTH);
+    }
+
+    public static void writeHeader(byte[] out, int streamId, long streamSeq, byte flags) {
+        ByteBuffer.wrap(out).putInt(streamId).putLong(streamSeq).put(flags);
+    }
+
+    // The header of every message frame is the same, messages are queued with it already in place. The frame
+    // starts after headroom free bytes and the returned buffer is positioned where the message goes.
+    @NotNull
+    public static ByteBuffer newMessage(int headroom, int length) {
+        var frame = ByteBuffer.allocate(headroom + HEADER_LENGTH + length);
+        return frame.position(headroom).putInt(0).putLong(0).put(FLAG_MESSAGE);
+    }
+
+    public static boolean isAbandoned(@NotNull DataPacket packet) {
+        var payload = packet.getPayload();
+        if (payload.remaining() < HEADER_LENGTH) return false;
+        return (payload.get(payload.position() + Integer.BYTES + Long.BYTES) & FLAG_ABANDONED) != 0;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public long getStreamSeq() {
+        return streamSeq;
+    }
+
+    public boolean isFin() {
+        return (flags & FLAG_FIN) != 0;
+    }
+
+    public boolean isMessage() {
+        return (flags & FLAG_MESSAGE) != 0;
+    }
+
+    public boolean isAbandoned() {
+        return (flags & FLAG_ABANDONED) != 0;
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public void release() {
+        packet.release();
+    }
+
+    // Copies the frame out of the datagram it arrived in and releases that datagram.
+    @NotNull
+    public StreamFrame detach() {
+        byte[] payload = new byte[HEADER_LENGTH + data.remaining()];
+        writeHeader(payload, streamId, streamSeq, flags);
+        data.get(data.position(), payload, HEADER_LENGTH, data.remaining());
+        release();
+        return new StreamFrame(DataPacket.wrap(packet.getSeqNumber(), payload));
+    }
+}
@@ -0,0 +1,45 @@
+package org.softstar.stp.network.packet;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+public class StreamWindowPacket extends Packet {
+    public static final byte TYPE = 0x0B;
+
+    private final int streamId;
+    private final long limit;
+
+    public StreamWindowPacket(long seqNumber, int streamId, long limit) {
+        super(seqNumber);
+        this.streamId = streamId;
+        this.limit = limit;
+    }
+
+    public StreamWindowPacket(ByteBuffer buffer) {
+        super(buffer);
+        this.streamId = buffer.getInt();
+        this.limit = buffer.getLong();
+    }
+
+    @Override
+    public int getSerializedLength() {
+        return super.getSerializedLength() + Integer.BYTES + Long.BYTES;
+    }
+
+    @Override
+    public void serialize(@NotNull ByteBuffer out) {
+        super.serialize(out);
+        out.putInt(getStreamId());
+        out.putLong(getLimit());
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    // Stream sequence number below which the receiver has room for packets.
+    public long getLimit() {
+        return limit;
+    }
+}
@@ -5,18 +5,48 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.ByteBuffer;
 
 public class SynAckPacket extends Packet {
-    public static byte TYPE = 0x02;
+    public static final byte TYPE = 0x02;
+
+    private final int features;
+    private final int maxStreams;
 
     public SynAckPacket(long seqNumber) {
+        this(seqNumber, 0);
+    }
+
+    public SynAckPacket(long seqNumber, int features) {
+        this(seqNumber, features, SynPacket.NO_STREAM_LIMIT);
+    }
+
+    public SynAckPacket(long seqNumber, int features, int maxStreams) {
         super(seqNumber);
+        this.features = features;
+        this.maxStreams = maxStreams;
     }
 
     public SynAckPacket(ByteBuffer buffer) {
         super(buffer);
+        this.features = buffer.remaining() >= Integer.BYTES ? buffer.getInt() : 0;
+        this.maxStreams = buffer.remaining() >= Integer.BYTES ? buffer.getInt() : SynPacket.NO_STREAM_LIMIT;
+    }
+
+    @Override
+    public int getSerializedLength() {
+        return super.getSerializedLength() + Integer.BYTES + Integer.BYTES;
     }
 
     @Override
     public void serialize(@NotNull ByteBuffer out) {
         super.serialize(out);
+        out.putInt(getFeatures());
+        out.putInt(getMaxStreams());
+    }
+
+    public int getFeatures() {
+        return features;
+    }
+
+    public int getMaxStreams() {
+        return maxStreams;
     }
 }
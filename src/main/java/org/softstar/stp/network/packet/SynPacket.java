@@ -5,18 +5,51 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.ByteBuffer;
 
 public class SynPacket extends Packet {
-    public static byte TYPE = 0x01;
+    public static final byte TYPE = 0x01;
+
+    // Streams the receiver lets the peer have open at a time, peers that announce none set no limit.
+    public static final int NO_STREAM_LIMIT = Integer.MAX_VALUE;
+
+    private final int features;
+    private final int maxStreams;
 
     public SynPacket(long seqNumber) {
+        this(seqNumber, 0);
+    }
+
+    public SynPacket(long seqNumber, int features) {
+        this(seqNumber, features, NO_STREAM_LIMIT);
+    }
+
+    public SynPacket(long seqNumber, int features, int maxStreams) {
         super(seqNumber);
+        this.features = features;
+        this.maxStreams = maxStreams;
     }
 
     public SynPacket(ByteBuffer buffer) {
         super(buffer);
+        this.features = buffer.remaining() >= Integer.BYTES ? buffer.getInt() : 0;
+        this.maxStreams = buffer.remaining() >= Integer.BYTES ? buffer.getInt() : NO_STREAM_LIMIT;
+    }
+
+    @Override
+    public int getSerializedLength() {
+        return super.getSerializedLength() + Integer.BYTES + Integer.BYTES;
     }
 
     @Override
     public void serialize(@NotNull ByteBuffer out) {
         super.serialize(out);
+        out.putInt(getFeatures());
+        out.putInt(getMaxStreams());
+    }
+
+    public int getFeatures() {
+        return features;
+    }
+
+    public int getMaxStreams() {
+        return maxStreams;
     }
 }
@@ -0,0 +1,37 @@
+package org.softstar.stp.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+public class BufferPool {
+    private final int bufferSize;
+    private final ArrayBlockingQueue<ByteBuffer> buffers;
+
+    public BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @NotNull
+    public ByteBuffer acquire() {
+        var buffer = buffers.poll();
+        if (buffer == null) return ByteBuffer.allocateDirect(bufferSize);
+        return buffer;
+    }
+
+    public void release(@NotNull ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize) return;
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getPooledCount() {
+        return buffers.size();
+    }
+}
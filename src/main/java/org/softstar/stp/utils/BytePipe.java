@@ -0,0 +1,157 @@
+package org.softstar.stp.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+// Single-producer single-consumer byte ring. Backing segments are allocated off-heap on first use.
+public class BytePipe {
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    private final int capacity;
+    private final int mask;
+    private final ByteBuffer[] segments;
+    private volatile long head = 0;
+    private volatile long tail = 0;
+    private volatile Thread waitingReader = null;
+    private volatile Thread waitingWriter = null;
+    private volatile boolean closed = false;
+    private long cachedHead = 0;
+    private long cachedTail = 0;
+
+    public BytePipe(int maxCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(maxCapacity, SEGMENT_SIZE) - 1) << 1;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.segments = new ByteBuffer[capacity >> SEGMENT_SHIFT];
+    }
+
+    public void write(byte[] data, int offset, int length) throws IOException {
+        write(ByteBuffer.wrap(data, offset, length));
+    }
+
+    public void write(ByteBuffer data) throws IOException {
+        int offset = data.position();
+        int length = data.remaining();
+        while (length > 0) {
+            long t = tail;
+            int free = capacity - (int) (t - cachedHead);
+            if (free == 0) {
+                cachedHead = head;
+                free = capacity - (int) (t - cachedHead);
+            }
+            if (free == 0) {
+                awaitSpace(t);
+                continue;
+            }
+            if (closed) throw new IOException("Pipe closed");
+
+            int count = Math.min(length, free);
+            for (int done = 0; done < count; ) {
+                int index = (int) ((t + done) & mask);
+                int inSegment = Math.min(count - done, SEGMENT_SIZE - (index & (SEGMENT_SIZE - 1)));
+                segment(index).put(index & (SEGMENT_SIZE - 1), data, offset + done, inSegment);
+                done += inSegment;
+            }
+            tail = t + count;
+            offset += count;
+            length -= count;
+            var reader = waitingReader;
+            if (reader != null) LockSupport.unpark(reader);
+        }
+    }
+
+    // Writes all of data only if it fits without blocking.
+    public boolean tryWrite(ByteBuffer data) throws IOException {
+        if (capacity - (int) (tail - head) < data.remaining()) return false;
+        write(data);
+        return true;
+    }
+
+    public int read(byte[] data, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        long h = head;
+        int available = (int) (cachedTail - h);
+        if (available < length) {
+            cachedTail = tail;
+            available = (int) (cachedTail - h);
+        }
+        while (available == 0) {
+            if (!awaitData(h)) return -1;
+            cachedTail = tail;
+            available = (int) (cachedTail - h);
+        }
+
+        int count = Math.min(length, available);
+        for (int done = 0; done < count; ) {
+            int index = (int) ((h + done) & mask);
+            int inSegment = Math.min(count - done, SEGMENT_SIZE - (index & (SEGMENT_SIZE - 1)));
+            segments[index >> SEGMENT_SHIFT].get(index & (SEGMENT_SIZE - 1), data, offset + done, inSegment);
+            done += inSegment;
+        }
+        head = h + count;
+        var writer = waitingWriter;
+        if (writer != null) LockSupport.unpark(writer);
+        return count;
+    }
+
+    public int available() {
+        return (int) (tail - head);
+    }
+
+    public int remainingCapacity() {
+        return capacity - available();
+    }
+
+    public void close() {
+        closed = true;
+        var reader = waitingReader;
+        if (reader != null) LockSupport.unpark(reader);
+        var writer = waitingWriter;
+        if (writer != null) LockSupport.unpark(writer);
+    }
+
+    private ByteBuffer segment(int index) {
+        var segment = segments[index >> SEGMENT_SHIFT];
+        if (segment == null) {
+            segment = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+            segments[index >> SEGMENT_SHIFT] = segment;
+        }
+        return segment;
+    }
+
+    private void awaitSpace(long t) throws IOException {
+        waitingWriter = Thread.currentThread();
+        try {
+            while (t - head == capacity) {
+                if (closed) throw new IOException("Pipe closed");
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        } finally {
+            waitingWriter = null;
+        }
+    }
+
+    private boolean awaitData(long h) throws IOException {
+        waitingReader = Thread.currentThread();
+        try {
+            while (tail == h) {
+                if (closed) return tail != h;
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            return true;
+        } finally {
+            waitingReader = null;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.softstar.stp.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+public class TimerWheel<T> {
+    private final int shift;
+    private final int mask;
+    private final Timer<T>[] slots;
+    private long cursor;
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(int resolutionShift, int slotCount, long now) {
+        if (Integer.bitCount(slotCount) != 1) throw new IllegalArgumentException("Slot count must be a power of two");
+        this.shift = resolutionShift;
+        this.mask = slotCount - 1;
+        this.slots = (Timer<T>[]) new Timer<?>[slotCount];
+        this.cursor = now >> shift;
+    }
+
+    @NotNull
+    public Timer<T> newTimer(T value) {
+        return new Timer<>(value);
+    }
+
+    public void schedule(@NotNull Timer<T> timer, long deadline) {
+        if (timer.scheduled) unlink(timer);
+        timer.deadline = deadline;
+        long index = Math.max(deadline >> shift, cursor);
+        int slot = (int) (index & mask);
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = slots[slot];
+        if (timer.next != null) timer.next.prev = timer;
+        slots[slot] = timer;
+        timer.scheduled = true;
+        ++size;
+    }
+
+    public void cancel(@NotNull Timer<T> timer) {
+        if (timer.scheduled) unlink(timer);
+    }
+
+    public void expire(long now, @NotNull Consumer<T> action) {
+        long target = now >> shift;
+        while (true) {
+            var timer = slots[(int) (cursor & mask)];
+            while (timer != null) {
+                var next = timer.next;
+                if (timer.deadline - now <= 0) {
+                    unlink(timer);
+                    action.accept(timer.value);
+                }
+                timer = next;
+            }
+            if (cursor >= target) break;
+            ++cursor;
+        }
+    }
+
+    public long nextDeadline() {
+        if (size == 0) return Long.MAX_VALUE;
+        for (int i = 0; i <= mask; ++i) {
+            long index = cursor + i;
+            long min = Long.MAX_VALUE;
+            for (var timer = slots[(int) (index & mask)]; timer != null; timer = timer.next)
+                if (timer.deadline >> shift <= index && timer.deadline < min) min = timer.deadline;
+            if (min != Long.MAX_VALUE) return min;
+        }
+
+        long min = Long.MAX_VALUE;
+        for (var head : slots)
+            for (var timer = head; timer != null; timer = timer.next) min = Math.min(min, timer.deadline);
+        return min;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void unlink(Timer<T> timer) {
+        if (timer.prev != null) timer.prev.next = timer.next;
+        else slots[timer.slot] = timer.next;
+        if (timer.next != null) timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+        timer.scheduled = false;
+        --size;
+    }
+
+    public static final class Timer<T> {
+        private final T value;
+        private long deadline;
+        private int slot;
+        private boolean scheduled = false;
+        private Timer<T> prev;
+        private Timer<T> next;
+
+        private Timer(T value) {
+            this.value = value;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isScheduled() {
+            return scheduled;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.softstar.stp.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+// Unsigned LEB128: seven bits per byte, lowest first, the high bit set on every byte but the last.
+// Ints are treated as unsigned, so negative values take five bytes.
+public final class VarInt {
+    private VarInt() {
+    }
+
+    public static int length(long value) {
+        return Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(value) + 6) / 7);
+    }
+
+    public static int length(int value) {
+        return length(Integer.toUnsignedLong(value));
+    }
+
+    public static void put(@NotNull ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    public static void putInt(@NotNull ByteBuffer out, int value) {
+        put(out, Integer.toUnsignedLong(value));
+    }
+
+    public static long get(@NotNull ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    public static int getInt(@NotNull ByteBuffer in) {
+        long value = get(in);
+        if (value >>> Integer.SIZE != 0) throw new IllegalArgumentException("Varint too large for an int");
+        return (int) value;
+    }
+}
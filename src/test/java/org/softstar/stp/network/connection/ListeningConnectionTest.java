@@ -0,0 +1,99 @@
+package org.softstar.stp.network.connection;
+
+import org.junit.jupiter.api.Test;
+import org.softstar.stp.network.decoder.CRC32PacketDecoder;
+import org.softstar.stp.network.encoder.CRC32PacketEncoder;
+import org.softstar.stp.network.packet.Packet;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListeningConnectionTest {
+    private static final long FULL_TIME = 300;
+
+    // Loopback never fills a socket buffer, so the accepted connections fail their sends while full is set.
+    private static class FullBufferListener extends ListeningConnection {
+        volatile boolean full = false;
+        final AtomicInteger refused = new AtomicInteger();
+
+        FullBufferListener(DatagramChannel channel, ConnectionOptions options) throws IOException {
+            super(channel, CRC32PacketEncoder::new, CRC32PacketDecoder::new, options);
+            start();
+        }
+
+        @Override
+        protected MultiplexedConnection newConnection(SocketAddress address) throws IOException {
+            return new MultiplexedConnection(this, channel, address, encoderFactory.get(), decoderFactory.get(), options) {
+                @Override
+                protected boolean sendNow(Packet packet) {
+                    if (!full) return super.sendNow(packet);
+                    refused.incrementAndGet();
+                    return false;
+                }
+
+                @Override
+                protected boolean sendNow(List<Packet> packets) {
+                    if (!full) return super.sendNow(packets);
+                    refused.incrementAndGet();
+                    return false;
+                }
+            };
+        }
+    }
+
+    private static DatagramChannel bind() throws IOException {
+        return DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    private static byte[] readFully(Connection connection, int length) throws IOException {
+        byte[] data = new byte[length];
+        byte[] buffer = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = connection.read(buffer, length - offset);
+            if (read < 0) break;
+            System.arraycopy(buffer, 0, data, offset, read);
+            offset += read;
+        }
+        return data;
+    }
+
+    @Test
+    void loopEngineRetriesSendsAfterAFullSocketBuffer() throws Exception {
+        try (var engine = new EventLoopEngine(1)) {
+            var options = new ConnectionOptions().setEngine(engine);
+            var serverChannel = bind();
+            var listener = new FullBufferListener(serverChannel, options);
+            var client = new Connection(bind(), serverChannel.getLocalAddress(), false, options);
+            client.write(new byte[1]);
+            client.flush();
+            var server = listener.accept();
+            readFully(server, 1);
+
+            byte[] data = new byte[4096];
+            new Random(1).nextBytes(data);
+            listener.full = true;
+            server.write(data);
+            server.flush();
+            Thread.sleep(FULL_TIME);
+            listener.full = false;
+            assertArrayEquals(data, readFully(client, data.length));
+
+            // Without the retry nothing but a timer wakes the connection, a few times over the whole period.
+            long retries = FULL_TIME / TimeUnit.NANOSECONDS.toMillis(Connection.SEND_RETRY_DELAY);
+            assertTrue(listener.refused.get() >= retries / 4, "Only " + listener.refused.get() + " sends attempted");
+
+            client.close();
+            server.close();
+            listener.close();
+        }
+    }
+}
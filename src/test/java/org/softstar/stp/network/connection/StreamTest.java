@@ -0,0 +1,92 @@
+package org.softstar.stp.network.connection;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamTest {
+    private static final int WRITE_SIZE = 100;
+    private static final long HOLD_TIME = 200;
+
+    private static DatagramChannel bind() throws IOException {
+        return DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    private static byte[] readFully(Stream stream, int length) throws IOException {
+        byte[] data = new byte[length];
+        byte[] buffer = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = stream.read(buffer, length - offset);
+            if (read < 0) break;
+            System.arraycopy(buffer, 0, data, offset, read);
+            offset += read;
+        }
+        return data;
+    }
+
+    // Returns the client and the server of an established pair.
+    private static Connection[] connect() throws IOException {
+        var clientChannel = bind();
+        var serverChannel = bind();
+        var server = new Connection(serverChannel, clientChannel.getLocalAddress(), true);
+        var client = new Connection(clientChannel, serverChannel.getLocalAddress(), false);
+        client.write(new byte[1]);
+        client.flush();
+        assertEquals(1, server.read(new byte[1]));
+        return new Connection[]{client, server};
+    }
+
+    private static byte[] payload() {
+        byte[] data = new byte[WRITE_SIZE];
+        for (int i = 0; i < data.length; ++i) data[i] = (byte) i;
+        return data;
+    }
+
+    @Test
+    void connectionFlushReleasesCorkedStreams() throws Exception {
+        var pair = connect();
+        var client = pair[0];
+        var server = pair[1];
+        client.cork();
+        var stream = client.openStream();
+        byte[] data = payload();
+        stream.write(data);
+        assertNull(server.acceptStream(HOLD_TIME, TimeUnit.MILLISECONDS), "Corked partial segment was sent");
+
+        client.flush();
+        var accepted = server.acceptStream(5, TimeUnit.SECONDS);
+        assertNotNull(accepted, "Flush did not release the stream");
+        assertArrayEquals(data, readFully(accepted, data.length));
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void streamFlushReleasesOnlyThatStream() throws Exception {
+        var pair = connect();
+        var client = pair[0];
+        var server = pair[1];
+        client.cork();
+        var held = client.openStream();
+        var flushed = client.openStream();
+        byte[] data = payload();
+        held.write(data);
+        flushed.write(data);
+
+        flushed.flush();
+        var accepted = server.acceptStream(5, TimeUnit.SECONDS);
+        assertNotNull(accepted, "Flush did not release the stream");
+        // Streams are opened in order, so the held one is accepted first even though it has sent nothing.
+        if (accepted.getId() == held.getId()) accepted = server.acceptStream(5, TimeUnit.SECONDS);
+        assertEquals(flushed.getId(), accepted.getId());
+        assertArrayEquals(data, readFully(accepted, data.length));
+        client.close();
+        server.close();
+    }
+}